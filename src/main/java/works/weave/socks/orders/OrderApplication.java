@@ -2,6 +2,8 @@ package works.weave.socks.orders;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
@@ -9,6 +11,13 @@ import org.springframework.scheduling.annotation.EnableAsync;
 public class OrderApplication {
 
     public static void main(String[] args) {
+        if (OrderExportCommand.isRequested(args)) {
+            // Export and exit without starting the web server.
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(OrderApplication.class)
+                    .web(false)
+                    .run(args);
+            System.exit(SpringApplication.exit(context));
+        }
         SpringApplication.run(OrderApplication.class, args);
     }
 }
@@ -0,0 +1,84 @@
+package works.weave.socks.orders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.services.OrderExportService;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports orders to a file instead of serving requests, for the nightly warehouse load:
+ * <pre>
+ * java -jar orders.jar --export --export.from=2017-03-01T00:00:00Z --export.to=2017-03-02T00:00:00Z \
+ *     --export.output=orders-2017-03-01.ndjson.gz
+ * </pre>
+ * The output is gzip compressed when its name ends in {@code .gz} or with {@code --export.gzip=true}. Orders are
+ * written to a temporary file next to it that is only renamed to the output once the export succeeded, so a failed
+ * run never leaves a truncated file behind under the expected name. The scheduled jobs and the index manager do not
+ * run in this mode.
+ */
+@Component
+@ConditionalOnProperty(name = "export")
+public class OrderExportCommand implements CommandLineRunner {
+    public static final String OPTION = "--export";
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Value("${export.from}")
+    private String from;
+
+    @Value("${export.to}")
+    private String to;
+
+    @Value("${export.output}")
+    private String output;
+
+    @Value("${export.gzip:false}")
+    private boolean gzip;
+
+    public static boolean isRequested(String[] args) {
+        return Arrays.asList(args).contains(OPTION);
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        Date fromDate = Date.from(Instant.parse(from));
+        Date toDate = Date.from(Instant.parse(to));
+        Path target = Paths.get(output).toAbsolutePath();
+        Path partial = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        try {
+            long written;
+            try (OrderExportService.Export export = orderExportService.start(fromDate, toDate);
+                 OutputStream out = open(partial)) {
+                written = export.writeTo(out);
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Exported " + written + " orders from " + from + " to " + to + " into " + output);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private OutputStream open(Path file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        return gzip || output.endsWith(".gz") ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+}
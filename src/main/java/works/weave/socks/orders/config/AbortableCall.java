@@ -0,0 +1,90 @@
+package works.weave.socks.orders.config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * One blocking downstream call that another thread may abort. While {@link #run} executes on a worker, the request
+ * factory of {@link RestProxyTemplate} attaches the HttpClient request it creates, so aborting the call closes that
+ * request's connection and frees the worker, instead of leaving both busy until the response arrives.
+ */
+public final class AbortableCall {
+    private static final ThreadLocal<AbortableCall> CURRENT = new ThreadLocal<>();
+
+    private Runnable abort;
+
+    private long timeoutMs;
+
+    private boolean aborted;
+
+    private boolean finished;
+
+    /**
+     * Returns the call running on this thread, or {@code null}.
+     */
+    public static AbortableCall current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs {@code exchange} on this thread as this call. A positive {@code timeoutMs} caps the socket timeout of its
+     * request at the time the caller has left. Aborts arriving after it returns are ignored.
+     */
+    public <T> T run(long timeoutMs, Supplier<T> exchange) {
+        this.timeoutMs = timeoutMs;
+        CURRENT.set(this);
+        try {
+            return exchange.get();
+        } finally {
+            CURRENT.remove();
+            synchronized (this) {
+                finished = true;
+                abort = null;
+            }
+        }
+    }
+
+    /**
+     * Aborts this call whenever {@code future} is cancelled or failed, e.g. by a caller that stopped waiting.
+     */
+    public <T> CompletableFuture<T> abortOnFailure(CompletableFuture<T> future) {
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                abort();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Registers how to abort the request in flight. Runs {@code abort} right away if the call was already aborted.
+     */
+    public synchronized void attach(Runnable abort) {
+        if (finished) {
+            return;
+        }
+        if (aborted) {
+            abort.run();
+        } else {
+            this.abort = abort;
+        }
+    }
+
+    public long timeoutMillis() {
+        return timeoutMs;
+    }
+
+    public synchronized void abort() {
+        if (aborted || finished) {
+            return;
+        }
+        aborted = true;
+        if (abort != null) {
+            abort.run();
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+}
@@ -0,0 +1,47 @@
+package works.weave.socks.orders.config;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+public class AsyncConfiguration {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    // Picked up by name for any remaining @Async method, so nothing falls back to Spring's unbounded
+    // SimpleAsyncTaskExecutor. Resolved lazily, which keeps the pool properties bound before it is created.
+    @Bean(name = "taskExecutor")
+    public Executor taskExecutor(DownstreamExecutors downstreamExecutors) {
+        return downstreamExecutors.forDependency(DownstreamExecutors.DEFAULT);
+    }
+
+    // Tomcat has a single executor per connector, so this covers /orders as well as every other endpoint.
+    @Bean
+    @ConditionalOnProperty(name = "async.virtual-threads", havingValue = "true")
+    public EmbeddedServletContainerCustomizer virtualThreadContainerCustomizer() {
+        return container -> {
+            if (!(container instanceof TomcatEmbeddedServletContainerFactory)) {
+                return;
+            }
+            if (!VirtualThreads.isSupported()) {
+                LOG.warn("Virtual threads requested but not supported by this JVM; Tomcat keeps its thread pool");
+                return;
+            }
+            ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers((Connector connector) -> {
+                ProtocolHandler handler = connector.getProtocolHandler();
+                if (handler instanceof AbstractProtocol) {
+                    ((AbstractProtocol<?>) handler).setExecutor(VirtualThreads.newExecutor("http-"));
+                }
+            });
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package works.weave.socks.orders.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-through caching of downstream HAL resources, per resource type, e.g.
+ * {@code cache.resources.customer.enabled=true} or {@code cache.resources.card.ttl-seconds=30}. The type is the
+ * lower-cased entity name ({@code customer}, {@code address}, {@code card}).
+ */
+@ConfigurationProperties(prefix = "cache")
+public class CacheConfigurationProperties {
+    private Map<String, Spec> resources = new HashMap<>();
+
+    public CacheConfigurationProperties() {
+        resources.put("customer", new Spec());
+        resources.put("address", new Spec());
+        resources.put("card", new Spec());
+    }
+
+    public Map<String, Spec> getResources() {
+        return resources;
+    }
+
+    public void setResources(Map<String, Spec> resources) {
+        this.resources = resources;
+    }
+
+    public static class Spec {
+        private boolean enabled = false;
+        private long ttlSeconds = 60;
+        private long maximumSize = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(long ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package works.weave.socks.orders.config;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One bounded executor per downstream dependency (user, carts, payment, shipping), so a slow service can only
+ * exhaust its own pool. Full pools reject immediately instead of queueing without limit. With
+ * {@code async.virtual-threads=true} on a JDK that supports them, each dependency gets a virtual thread per call,
+ * still capped at the pool's {@code max-size + queue-capacity}.
+ */
+@Component
+public class DownstreamExecutors {
+    public static final String DEFAULT = "default";
+
+    static final Counter rejections = Counter.build()
+            .name("executor_rejected_tasks_total")
+            .help("Tasks rejected because the dependency's pool and queue were full.")
+            .labelNames("pool")
+            .register();
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, Executor> executors = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DownstreamExecutors(ExecutorConfigurationProperties properties) {
+        boolean virtual = properties.isVirtualThreads() && VirtualThreads.isSupported();
+        if (properties.isVirtualThreads() && !virtual) {
+            LOG.warn("Virtual threads requested but not supported by this JVM; using platform thread pools");
+        }
+        properties.getPools().forEach((name, pool) -> executors.put(name, newExecutor(name, pool, virtual)));
+        if (!executors.containsKey(DEFAULT)) {
+            executors.put(DEFAULT, newExecutor(DEFAULT, new ExecutorConfigurationProperties.Pool(), virtual));
+        }
+        new ExecutorCollector(executors).register();
+    }
+
+    public Executor forUri(URI uri) {
+        return forDependency(dependencyOf(uri));
+    }
+
+    public Executor forDependency(String name) {
+        Executor executor = executors.get(name);
+        return executor != null ? executor : executors.get(DEFAULT);
+    }
+
+    /**
+     * The dependency name is the first label of the host, so {@code http://user.sock-shop/cards/1} maps to
+     * {@code user}.
+     */
+    public static String dependencyOf(URI uri) {
+        String host = uri.getHost();
+        if (host == null) {
+            return DEFAULT;
+        }
+        int dot = host.indexOf('.');
+        return dot > 0 ? host.substring(0, dot) : host;
+    }
+
+    private Executor newExecutor(String name, ExecutorConfigurationProperties.Pool pool, boolean virtual) {
+        if (virtual) {
+            int limit = pool.getMaxSize() + pool.getQueueCapacity();
+            LOG.info("Creating virtual thread executor " + name + ": limit=" + limit);
+            return new VirtualThreadExecutor(name, VirtualThreads.newExecutor(name + "-"), limit);
+        }
+        LOG.info("Creating executor " + name + ": max=" + pool.getMaxSize() + ", queue=" + pool.getQueueCapacity());
+        // A ThreadPoolExecutor only adds threads beyond its core size once the queue is full, so core == max makes
+        // it start a thread per call up to max-size before queueing; idle threads still time out.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                pool.getMaxSize(),
+                pool.getMaxSize(),
+                pool.getKeepAliveSeconds(), TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(pool.getQueueCapacity()),
+                new CustomizableThreadFactory(name + "-"),
+                (task, rejectedBy) -> {
+                    throw reject(name);
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static RejectedExecutionException reject(String name) {
+        rejections.labels(name).inc();
+        return new RejectedExecutionException("Executor for " + name + " is saturated");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(executor -> {
+            if (executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdown();
+            } else if (executor instanceof VirtualThreadExecutor) {
+                ((VirtualThreadExecutor) executor).delegate.shutdown();
+            }
+        });
+    }
+
+    private static class VirtualThreadExecutor implements Executor {
+        private final String name;
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final int limit;
+
+        private VirtualThreadExecutor(String name, ExecutorService delegate, int limit) {
+            this.name = name;
+            this.delegate = delegate;
+            this.permits = new Semaphore(limit);
+            this.limit = limit;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (!permits.tryAcquire()) {
+                throw reject(name);
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private int getActiveCount() {
+            return limit - permits.availablePermits();
+        }
+    }
+
+    private static class ExecutorCollector extends Collector {
+        private final Map<String, Executor> executors;
+
+        private ExecutorCollector(Map<String, Executor> executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples.Sample> active = new ArrayList<>();
+            List<MetricFamilySamples.Sample> size = new ArrayList<>();
+            List<MetricFamilySamples.Sample> queued = new ArrayList<>();
+            List<String> labelNames = Collections.singletonList("pool");
+            executors.forEach((name, executor) -> {
+                int activeCount = 0;
+                int poolSize = 0;
+                int queueDepth = 0;
+                if (executor instanceof ThreadPoolExecutor) {
+                    ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+                    activeCount = pool.getActiveCount();
+                    poolSize = pool.getPoolSize();
+                    queueDepth = pool.getQueue().size();
+                } else if (executor instanceof VirtualThreadExecutor) {
+                    activeCount = ((VirtualThreadExecutor) executor).getActiveCount();
+                    poolSize = activeCount;
+                }
+                List<String> labelValues = Collections.singletonList(name);
+                active.add(new MetricFamilySamples.Sample("executor_active_threads", labelNames, labelValues,
+                        activeCount));
+                size.add(new MetricFamilySamples.Sample("executor_pool_size", labelNames, labelValues, poolSize));
+                queued.add(new MetricFamilySamples.Sample("executor_queue_depth", labelNames, labelValues,
+                        queueDepth));
+            });
+            List<MetricFamilySamples> samples = new ArrayList<>();
+            samples.add(new MetricFamilySamples("executor_active_threads", Type.GAUGE,
+                    "Threads currently running a downstream call.", active));
+            samples.add(new MetricFamilySamples("executor_pool_size", Type.GAUGE,
+                    "Threads currently in the pool.", size));
+            samples.add(new MetricFamilySamples("executor_queue_depth", Type.GAUGE,
+                    "Calls waiting for a free thread.", queued));
+            return samples;
+        }
+    }
+}
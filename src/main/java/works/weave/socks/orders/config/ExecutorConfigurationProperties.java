@@ -0,0 +1,89 @@
+package works.weave.socks.orders.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sizing of the thread pools used for calls to downstream services, e.g. {@code async.pools.payment.max-size=20}.
+ * A pool is picked by the first label of the downstream host name; anything unknown goes to {@code default}.
+ */
+@ConfigurationProperties(prefix = "async")
+public class ExecutorConfigurationProperties {
+    private Map<String, Pool> pools = new HashMap<>();
+
+    /**
+     * Run downstream calls and Tomcat request handling on virtual threads when the JVM supports them. The pool
+     * sizes then only bound concurrency: {@code max-size + queue-capacity} calls may be in flight per dependency.
+     */
+    private boolean virtualThreads = false;
+
+    public ExecutorConfigurationProperties() {
+        pools.put("default", new Pool(16, 50));
+        pools.put("user", new Pool(50, 100));
+        pools.put("carts", new Pool(50, 100));
+        pools.put("payment", new Pool(20, 50));
+        pools.put("shipping", new Pool(20, 50));
+        pools.put("orders-db", new Pool(50, 100));
+    }
+
+    public Map<String, Pool> getPools() {
+        return pools;
+    }
+
+    public void setPools(Map<String, Pool> pools) {
+        this.pools = pools;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Threads are started on demand up to {@code max-size} and stop after {@code keep-alive-seconds} idle; further
+     * calls wait in a queue of {@code queue-capacity} and are rejected once it is full.
+     */
+    public static class Pool {
+        private int maxSize;
+        private int queueCapacity;
+        private int keepAliveSeconds = 60;
+
+        public Pool() {
+            this(16, 50);
+        }
+
+        public Pool(int maxSize, int queueCapacity) {
+            this.maxSize = maxSize;
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getKeepAliveSeconds() {
+            return keepAliveSeconds;
+        }
+
+        public void setKeepAliveSeconds(int keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+        }
+    }
+}
@@ -13,4 +13,22 @@ public class OrdersConfiguration {
     public OrdersConfigurationProperties frameworkMesosConfigProperties() {
         return new OrdersConfigurationProperties();
     }
+
+    @Bean
+    @ConditionalOnMissingBean(CacheConfigurationProperties.class)
+    public CacheConfigurationProperties cacheConfigurationProperties() {
+        return new CacheConfigurationProperties();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(CircuitBreakerConfigurationProperties.class)
+    public CircuitBreakerConfigurationProperties circuitBreakerConfigurationProperties() {
+        return new CircuitBreakerConfigurationProperties();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ExecutorConfigurationProperties.class)
+    public ExecutorConfigurationProperties executorConfigurationProperties() {
+        return new ExecutorConfigurationProperties();
+    }
 }
@@ -71,18 +71,35 @@
 
 package works.weave.socks.orders.config;
 
+import io.prometheus.client.Collector;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.context.annotation.Bean;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public final class RestProxyTemplate {
@@ -102,27 +119,160 @@ public final class RestProxyTemplate {
     @Value("${proxy.port:}")
     private String port;
 
+    @Value("${http.pool.max-total:200}")
+    private int maxTotal;
+
+    @Value("${http.pool.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${http.pool.keep-alive-ms:30000}")
+    private long keepAliveMs;
+
+    @Value("${http.pool.idle-eviction-ms:30000}")
+    private long idleEvictionMs;
+
+    @Value("${http.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+
+    @Value("${http.read-timeout-ms:5000}")
+    private int readTimeoutMs;
+
+    @Value("${http.pool.acquire-timeout-ms:1000}")
+    private int acquireTimeoutMs;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private CloseableHttpClient httpClient;
+
+    private RequestConfig requestConfig;
+
+    private HttpHost proxy;
+
     @PostConstruct
     public void init() {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(acquireTimeoutMs)
+                .build();
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy())
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionMs, TimeUnit.MILLISECONDS);
+        proxy = proxy();
+        if (proxy != null) {
+            builder.setProxy(proxy);
+        }
+        httpClient = builder.build();
+
+        restTemplate.setRequestFactory(new AbortableRequestFactory(httpClient, requestConfig));
+        new ConnectionPoolCollector(connectionManager).register();
+    }
+
+    private HttpHost proxy() {
         if (host.isEmpty() || port.isEmpty()) {
-            return;
+            return null;
         }
-        int portNr = -1;
         try {
-            portNr = Integer.parseInt(port);
+            return new HttpHost(host, Integer.parseInt(port));
         } catch (NumberFormatException e) {
             // FIXME: this should honestly probably be a fatal error
             logger.error("Unable to parse the proxy port number");
+            return null;
         }
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        InetSocketAddress address = new InetSocketAddress(host, portNr);
-        Proxy proxy = new Proxy(Proxy.Type.HTTP, address);
-        factory.setProxy(proxy);
+    }
 
-        restTemplate.setRequestFactory(factory);
+    // Honour the server's Keep-Alive header but never keep a connection longer than http.pool.keep-alive-ms.
+    public ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+        };
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
     }
 
     public RestTemplate getRestTemplate() {
         return restTemplate;
     }
+
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    public HttpHost getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Attaches each request created while an {@link AbortableCall} runs on this thread to that call, and lowers its
+     * socket timeout to the time the call has left.
+     */
+    private static class AbortableRequestFactory extends HttpComponentsClientHttpRequestFactory {
+        private final RequestConfig requestConfig;
+
+        private AbortableRequestFactory(HttpClient httpClient, RequestConfig requestConfig) {
+            super(httpClient);
+            this.requestConfig = requestConfig;
+        }
+
+        @Override
+        protected void postProcessHttpRequest(HttpUriRequest request) {
+            AbortableCall call = AbortableCall.current();
+            if (call == null) {
+                return;
+            }
+            long timeoutMs = call.timeoutMillis();
+            if (timeoutMs > 0 && timeoutMs < requestConfig.getSocketTimeout() && request instanceof HttpRequestBase) {
+                ((HttpRequestBase) request).setConfig(RequestConfig.copy(requestConfig)
+                        .setSocketTimeout((int) timeoutMs)
+                        .build());
+            }
+            call.attach(request::abort);
+        }
+    }
+
+    private static class ConnectionPoolCollector extends Collector {
+        private static final List<String> LABEL_NAMES = Arrays.asList("route", "state");
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        private ConnectionPoolCollector(PoolingHttpClientConnectionManager connectionManager) {
+            this.connectionManager = connectionManager;
+        }
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+            for (HttpRoute route : connectionManager.getRoutes()) {
+                String name = route.getTargetHost().toHostString();
+                PoolStats stats = connectionManager.getStats(route);
+                samples.add(sample(name, "leased", stats.getLeased()));
+                samples.add(sample(name, "pending", stats.getPending()));
+                samples.add(sample(name, "available", stats.getAvailable()));
+            }
+            PoolStats total = connectionManager.getTotalStats();
+            samples.add(sample("all", "leased", total.getLeased()));
+            samples.add(sample("all", "pending", total.getPending()));
+            samples.add(sample("all", "available", total.getAvailable()));
+            return Arrays.asList(new MetricFamilySamples("http_client_pool_connections", Type.GAUGE,
+                    "Pooled downstream HTTP connections by route and state.", samples));
+        }
+
+        private MetricFamilySamples.Sample sample(String route, String state, int value) {
+            return new MetricFamilySamples.Sample("http_client_pool_connections", LABEL_NAMES,
+                    Arrays.asList(route, state), value);
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package works.weave.socks.orders.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Runs the {@code @Scheduled} jobs: the shipment outbox dispatch, the sales rollup flush and the index statistics
+ * refresh. Off in {@code --export} mode, where the process only exports and exits.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "export", havingValue = "false", matchIfMissing = true)
+public class SchedulingConfiguration {
+    // @Scheduled jobs otherwise share one thread, so the outbox dispatch, which waits on shipping calls, would
+    // hold up the rollup flush and the index statistics. One thread per job keeps them independent.
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:3}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduled-");
+        scheduler.setDaemon(true);
+        return scheduler;
+    }
+}
@@ -0,0 +1,50 @@
+package works.weave.socks.orders.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual-thread executors when running on a JDK that has them (21+). The service is still built for Java 8,
+ * so everything goes through reflection.
+ */
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    private static final boolean SUPPORTED = probe();
+
+    /**
+     * Whether virtual-thread executors can actually be created. On JDK 19 and 20 {@code Thread.ofVirtual} exists but
+     * throws unless the JVM runs with {@code --enable-preview}, so this builds one instead of looking the method up.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    private static boolean probe() {
+        try {
+            newExecutor("virtual-thread-probe-").shutdown();
+            return true;
+        } catch (RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread named {@code prefix<n>} for every task.
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available on this JVM", e);
+        }
+    }
+}
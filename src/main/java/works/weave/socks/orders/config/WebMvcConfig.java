@@ -13,6 +13,7 @@ package works.weave.socks.orders.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.handler.MappedInterceptor;
+import works.weave.socks.orders.middleware.ConcurrencyLimitInterceptor;
 import works.weave.socks.orders.middleware.HTTPMonitoringInterceptor;
 
 @Configuration
@@ -26,4 +27,14 @@ public class WebMvcConfig {
     public MappedInterceptor myMappedInterceptor(HTTPMonitoringInterceptor interceptor) {
         return new MappedInterceptor(new String[]{"/**"}, interceptor);
     }
+
+    @Bean
+    ConcurrencyLimitInterceptor concurrencyLimitInterceptor() {
+        return new ConcurrencyLimitInterceptor();
+    }
+
+    @Bean
+    public MappedInterceptor concurrencyLimitMappedInterceptor(ConcurrencyLimitInterceptor interceptor) {
+        return new MappedInterceptor(new String[]{"/orders"}, interceptor);
+    }
 }
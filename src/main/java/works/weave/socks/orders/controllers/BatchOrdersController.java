@@ -0,0 +1,39 @@
+package works.weave.socks.orders.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import works.weave.socks.orders.resources.BatchOrderResult;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.services.CheckoutService;
+
+import java.util.List;
+
+/**
+ * Checks out many orders in one request. The response is {@code 200} with one {@link BatchOrderResult} per submitted
+ * order; a failed order does not fail the batch.
+ */
+@RepositoryRestController
+public class BatchOrdersController {
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Value("${orders.batch.timeout-ms:300000}")
+    private long timeoutMs;
+
+    @RequestMapping(path = "/orders/batch", consumes = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
+    public @ResponseBody DeferredResult<List<BatchOrderResult>> newOrders(@RequestBody List<NewOrderResource> items) {
+        DeferredResult<List<BatchOrderResult>> result = new DeferredResult<>(timeoutMs);
+        checkoutService.placeOrders(items).whenComplete((results, e) -> {
+            if (e != null) {
+                result.setErrorResult(CheckoutService.translate(e));
+            } else {
+                result.setResult(results);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package works.weave.socks.orders.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.util.UriComponentsBuilder;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.services.CheckoutService;
+
+/**
+ * Replaces {@link OrdersController} when {@code checkout.non-blocking=true}. The request thread is handed back to
+ * Tomcat as soon as the checkout pipeline has been started and the response is written once the order is saved.
+ */
+@RepositoryRestController
+@ConditionalOnProperty(name = "checkout.non-blocking", havingValue = "true")
+public class NonBlockingOrdersController {
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @RequestMapping(path = "/orders", consumes = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
+    public DeferredResult<ResponseEntity<Object>> newOrder(@RequestBody NewOrderResource item,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = OrderResponses.PREFER, required = false) String prefer) {
+        DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>();
+        UriComponentsBuilder ordersUri = OrderResponses.ordersUri();
+        checkoutService.placeOrder(item, idempotencyKey).whenComplete((order, e) -> {
+            if (e != null) {
+                result.setErrorResult(CheckoutService.translate(e));
+            } else {
+                result.setResult(OrderResponses.created(order, prefer, ordersUri));
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,62 @@
+package works.weave.socks.orders.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import works.weave.socks.orders.services.JsonStreamWriter;
+import works.weave.socks.orders.services.OrderExportService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk export of orders for the warehouse load, as one newline delimited JSON stream instead of HAL pages.
+ */
+@RepositoryRestController
+public class OrderExportController {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    /**
+     * Streams the orders placed in {@code [from, to)}, oldest first. The stream is gzip compressed when the client
+     * accepts it or asks for it with {@code gzip=true}. A failure after output has started aborts the connection, so
+     * the client sees an incomplete chunked response, and an incomplete gzip stream, rather than a short export.
+     */
+    // curl --compressed http://localhost:8082/orders/export\?from\=2017-03-01T00:00:00Z\&to\=2017-04-01T00:00:00Z
+    @RequestMapping(path = "/orders/export", method = RequestMethod.GET)
+    public void export(@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        try (OrderExportService.Export export = orderExportService.start(from, to)) {
+            boolean compress = gzip || (acceptEncoding != null && acceptEncoding.contains("gzip"));
+            response.setContentType(JsonStreamWriter.NDJSON_VALUE);
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (compress) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            OutputStream out = compress
+                    ? new GZIPOutputStream(response.getOutputStream(), 64 * 1024)
+                    : response.getOutputStream();
+            // Only closed on success: closing writes the gzip trailer and lets the container end the chunked
+            // response, which would make a truncated export look complete. An exception thrown once the response is
+            // committed makes Tomcat close the connection without the final chunk.
+            long written = export.writeTo(out);
+            out.close();
+            LOG.info("Exported " + written + " orders from " + from + " to " + to);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package works.weave.socks.orders.controllers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.resources.OrderSummary;
+
+/**
+ * Response of a successful {@code POST /orders}. Clients sending {@code Prefer: return=minimal} (RFC 7240) get the
+ * {@link OrderSummary} and a {@code Location} header instead of the full order with its embedded customer, address,
+ * card and items.
+ */
+final class OrderResponses {
+    static final String PREFER = "Prefer";
+
+    private OrderResponses() {
+    }
+
+    /**
+     * Captures the order collection URI; must be called on the request thread.
+     */
+    static UriComponentsBuilder ordersUri() {
+        return ServletUriComponentsBuilder.fromCurrentRequestUri();
+    }
+
+    static ResponseEntity<Object> created(CustomerOrder order, String prefer, UriComponentsBuilder ordersUri) {
+        if (prefer == null || !prefer.contains("return=minimal")) {
+            return ResponseEntity.status(HttpStatus.CREATED).body(order);
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .location(ordersUri.cloneBuilder().pathSegment(order.getId()).build().toUri())
+                .header("Preference-Applied", "return=minimal")
+                .body(OrderSummary.of(order));
+    }
+}
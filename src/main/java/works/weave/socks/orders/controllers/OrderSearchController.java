@@ -0,0 +1,83 @@
+package works.weave.socks.orders.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.resources.CustomerOrderStats;
+import works.weave.socks.orders.resources.OrderPage;
+import works.weave.socks.orders.resources.OrderSummary;
+import works.weave.socks.orders.services.JsonStreamWriter;
+import works.weave.socks.orders.services.OrderSearchService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Order searches that stream their results instead of rendering one HAL document, for customers with many orders.
+ */
+@RepositoryRestController
+public class OrderSearchController {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private OrderSearchService orderSearchService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Streams a customer's orders straight from the Mongo cursor, as newline delimited JSON when the client accepts
+     * {@code application/x-ndjson} and as a JSON array otherwise.
+     */
+    // curl -H 'Accept: application/x-ndjson' http://localhost:8082/orders/search/customerId/stream\?custId\=1
+    @RequestMapping(path = "/orders/search/customerId/stream", method = RequestMethod.GET)
+    public void streamByCustomerId(@RequestParam("custId") String customerId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) throws IOException {
+        boolean ndjson = accept != null && accept.contains(JsonStreamWriter.NDJSON_VALUE);
+        response.setContentType(ndjson ? JsonStreamWriter.NDJSON_VALUE : MediaType.APPLICATION_JSON_UTF8_VALUE);
+        try (CloseableIterator<CustomerOrder> orders = orderSearchService.streamByCustomerId(customerId)) {
+            long written = new JsonStreamWriter(objectMapper).write(orders, response.getOutputStream(), ndjson);
+            LOG.debug("Streamed " + written + " orders of customer " + customerId);
+        }
+    }
+
+    /**
+     * Keyset paginated listing of all orders, or of one customer's orders, newest first. Pass the {@code next} token
+     * of a page as {@code continuation} to get the following one.
+     */
+    // curl http://localhost:8082/orders/search/page\?custId\=1\&size\=20
+    @RequestMapping(path = "/orders/search/page", method = RequestMethod.GET)
+    public @ResponseBody OrderPage<CustomerOrder> page(@RequestParam(value = "custId", required = false) String customerId,
+            @RequestParam(value = "continuation", required = false) String continuation,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "count", defaultValue = "false") boolean count) {
+        return orderSearchService.page(customerId, continuation, size, count);
+    }
+
+    /**
+     * Same listing as {@link #page}, but only the fields of an {@link OrderSummary} are read and returned.
+     */
+    // curl http://localhost:8082/orders/search/summaries\?custId\=1
+    @RequestMapping(path = "/orders/search/summaries", method = RequestMethod.GET)
+    public @ResponseBody OrderPage<OrderSummary> summaries(
+            @RequestParam(value = "custId", required = false) String customerId,
+            @RequestParam(value = "continuation", required = false) String continuation,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "count", defaultValue = "false") boolean count) {
+        return orderSearchService.summaries(customerId, continuation, size, count);
+    }
+
+    // curl http://localhost:8082/orders/search/customerId/stats\?custId\=1
+    @RequestMapping(path = "/orders/search/customerId/stats", method = RequestMethod.GET)
+    public @ResponseBody CustomerOrderStats stats(@RequestParam("custId") String customerId) {
+        return orderSearchService.stats(customerId);
+    }
+}
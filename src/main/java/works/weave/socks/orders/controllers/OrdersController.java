@@ -29,138 +29,35 @@ The advantage of using `CompletableFuture` is more about efficiency and responsi
 
 package works.weave.socks.orders.controllers;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.rest.webmvc.RepositoryRestController;
-import org.springframework.hateoas.Resource;
-import org.springframework.hateoas.mvc.TypeReferences;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import works.weave.socks.orders.config.OrdersConfigurationProperties;
-import works.weave.socks.orders.entities.*;
-import works.weave.socks.orders.repositories.CustomerOrderRepository;
+import works.weave.socks.orders.entities.CustomerOrder;
 import works.weave.socks.orders.resources.NewOrderResource;
-import works.weave.socks.orders.services.AsyncGetService;
-import works.weave.socks.orders.values.PaymentRequest;
-import works.weave.socks.orders.values.PaymentResponse;
+import works.weave.socks.orders.services.CheckoutService;
 
-import java.io.IOException;
-import java.util.Calendar;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @RepositoryRestController
+@ConditionalOnProperty(name = "checkout.non-blocking", havingValue = "false", matchIfMissing = true)
 public class OrdersController {
-    private final Logger LOG = LoggerFactory.getLogger(getClass());
-
-    @Autowired
-    private OrdersConfigurationProperties config;
-
-    @Autowired
-    private AsyncGetService asyncGetService;
-
     @Autowired
-    private CustomerOrderRepository customerOrderRepository;
+    private CheckoutService checkoutService;
 
-    @Value(value = "${http.timeout:5}")
-    private long timeout;
-
-    @ResponseStatus(HttpStatus.CREATED)
     @RequestMapping(path = "/orders", consumes = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
-    public @ResponseBody CustomerOrder newOrder(@RequestBody NewOrderResource item) {
+    public ResponseEntity<Object> newOrder(@RequestBody NewOrderResource item,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = OrderResponses.PREFER, required = false) String prefer) {
         try {
-
-            if (item.address == null || item.customer == null || item.card == null || item.items == null) {
-                throw new InvalidOrderException(
-                        "Invalid order request. Order requires customer, address, card and items.");
-            }
-
-            LOG.debug("Starting calls");
-            Future<Resource<Address>> addressFuture = asyncGetService.getResource(item.address,
-                    new TypeReferences.ResourceType<Address>() {
-                    });
-            Future<Resource<Customer>> customerFuture = asyncGetService.getResource(item.customer,
-                    new TypeReferences.ResourceType<Customer>() {
-                    });
-            Future<Resource<Card>> cardFuture = asyncGetService.getResource(item.card,
-                    new TypeReferences.ResourceType<Card>() {
-                    });
-            Future<List<Item>> itemsFuture = asyncGetService.getDataList(item.items,
-                    new ParameterizedTypeReference<List<Item>>() {
-                    });
-            LOG.debug("End of calls.");
-
-            float amount = calculateTotal(itemsFuture.get(timeout, TimeUnit.SECONDS));
-
-            // Call payment service to make sure they've paid
-            PaymentRequest paymentRequest = new PaymentRequest(
-                    addressFuture.get(timeout, TimeUnit.SECONDS).getContent(),
-                    cardFuture.get(timeout, TimeUnit.SECONDS).getContent(),
-                    customerFuture.get(timeout, TimeUnit.SECONDS).getContent(),
-                    amount);
-            // TODO: here, retry mechanism can be implemented
-            LOG.info("Sending payment request: " + paymentRequest);
-            Future<PaymentResponse> paymentFuture = asyncGetService.postResource(
-                    config.getPaymentUri(),
-                    paymentRequest,
-                    new ParameterizedTypeReference<PaymentResponse>() {
-                    });
-            PaymentResponse paymentResponse = paymentFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Received payment response: " + paymentResponse);
-            if (paymentResponse == null) {
-                throw new PaymentDeclinedException("Unable to parse authorisation packet");
-            }
-            if (!paymentResponse.isAuthorised()) {
-                throw new PaymentDeclinedException(paymentResponse.getMessage());
-            }
-
-            // Ship
-            String customerId = parseId(customerFuture.get(timeout, TimeUnit.SECONDS).getId().getHref());
-            Future<Shipment> shipmentFuture = asyncGetService.postResource(config.getShippingUri(),
-                    new Shipment(customerId), new ParameterizedTypeReference<Shipment>() {
-                    });
-            // TODO: here, retry and timeout mechanism can be implemented
-
-            CustomerOrder order = new CustomerOrder(
-                    null,
-                    customerId,
-                    customerFuture.get(timeout, TimeUnit.SECONDS).getContent(),
-                    addressFuture.get(timeout, TimeUnit.SECONDS).getContent(),
-                    cardFuture.get(timeout, TimeUnit.SECONDS).getContent(),
-                    itemsFuture.get(timeout, TimeUnit.SECONDS),
-                    shipmentFuture.get(timeout, TimeUnit.SECONDS),
-                    Calendar.getInstance().getTime(),
-                    amount);
-            LOG.debug("Received data: " + order.toString());
-
-            CustomerOrder savedOrder = customerOrderRepository.save(order);
-            LOG.debug("Saved order: " + savedOrder);
-
-            return savedOrder;
+            CustomerOrder order = checkoutService.placeOrder(item, idempotencyKey).get();
+            return OrderResponses.created(order, prefer, OrderResponses.ordersUri());
             // TODO: retries
-        } catch (TimeoutException e) {
-            throw new IllegalStateException("Unable to create order due to timeout from one of the services.", e);
-        } catch (InterruptedException | IOException | ExecutionException e) {
-            throw new IllegalStateException("Unable to create order due to unspecified IO error.", e);
-        }
-    }
-
-    private String parseId(String href) {
-        Pattern idPattern = Pattern.compile("[\\w-]+$");
-        Matcher matcher = idPattern.matcher(href);
-        if (!matcher.find()) {
-            throw new IllegalStateException("Could not parse user ID from: " + href);
+        } catch (InterruptedException | ExecutionException e) {
+            throw CheckoutService.translate(e);
         }
-        return matcher.group(0);
     }
 
     // Pre-existing TODO: Add link to shipping
@@ -180,26 +77,4 @@ public class OrdersController {
     //
     // return ResponseEntity.ok(resources);
     // }
-
-    private float calculateTotal(List<Item> items) {
-        float amount = 0F;
-        float shipping = 4.99F;
-        amount += items.stream().mapToDouble(i -> i.getQuantity() * i.getUnitPrice()).sum();
-        amount += shipping;
-        return amount;
-    }
-
-    @ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
-    public class PaymentDeclinedException extends IllegalStateException {
-        public PaymentDeclinedException(String s) {
-            super(s);
-        }
-    }
-
-    @ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
-    public class InvalidOrderException extends IllegalStateException {
-        public InvalidOrderException(String s) {
-            super(s);
-        }
-    }
 }
@@ -0,0 +1,35 @@
+package works.weave.socks.orders.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import works.weave.socks.orders.entities.SalesRollup;
+import works.weave.socks.orders.services.SalesRollups;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Serves the precomputed hourly and daily sales rollups; no orders are read.
+ */
+@RepositoryRestController
+public class SalesRollupController {
+    @Autowired
+    private SalesRollups salesRollups;
+
+    /**
+     * Rollups of one granularity whose bucket starts in {@code [from, to)}, oldest first.
+     */
+    // curl http://localhost:8082/sales/rollups\?granularity\=DAY\&from\=2017-03-01T00:00:00Z\&to\=2017-04-01T00:00:00Z
+    @RequestMapping(path = "/sales/rollups", method = RequestMethod.GET)
+    public @ResponseBody List<SalesRollup> rollups(
+            @RequestParam(value = "granularity", defaultValue = SalesRollup.DAY) String granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to) {
+        return salesRollups.find(granularity, from, to);
+    }
+}
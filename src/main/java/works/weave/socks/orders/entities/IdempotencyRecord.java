@@ -0,0 +1,102 @@
+package works.weave.socks.orders.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Remembers the outcome of a {@code POST /orders} sent with an {@code Idempotency-Key} header. The id is the key
+ * itself and {@code fingerprint} identifies the request body it was first used with; records expire through a TTL
+ * index on {@code created}. A record is {@code PAID} once payment has been authorised, and from then on is only
+ * ever {@code COMPLETED} or {@code FAILED}, never released.
+ */
+@Document(collection = "idempotencyKeys")
+public class IdempotencyRecord {
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String PAID = "PAID";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    private String id;
+
+    private String fingerprint;
+
+    private String status;
+
+    private String orderId;
+
+    private String error;
+
+    private Date created = Calendar.getInstance().getTime();
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String id, String fingerprint, String status) {
+        this.id = id;
+        this.fingerprint = fingerprint;
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyRecord{" +
+                "id='" + id + '\'' +
+                ", status='" + status + '\'' +
+                ", orderId='" + orderId + '\'' +
+                ", error='" + error + '\'' +
+                ", created=" + created +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+}
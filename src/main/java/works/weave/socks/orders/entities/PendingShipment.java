@@ -0,0 +1,109 @@
+package works.weave.socks.orders.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Outbox entry for an order whose shipment still has to be requested from the shipping service. The id is the id of
+ * the {@link CustomerOrder}; the shipment id is fixed up front so retries do not create duplicate shipments.
+ */
+@Document(collection = "pendingShipments")
+public class PendingShipment {
+
+    @Id
+    private String id;
+
+    private String customerId;
+
+    private String shipmentId;
+
+    private int attempts;
+
+    @Indexed
+    private Date nextAttempt;
+
+    private Date created = Calendar.getInstance().getTime();
+
+    private String lastError;
+
+    public PendingShipment() {
+    }
+
+    public PendingShipment(String id, String customerId, String shipmentId) {
+        this.id = id;
+        this.customerId = customerId;
+        this.shipmentId = shipmentId;
+        this.nextAttempt = created;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingShipment{" +
+                "id='" + id + '\'' +
+                ", customerId='" + customerId + '\'' +
+                ", shipmentId='" + shipmentId + '\'' +
+                ", attempts=" + attempts +
+                ", nextAttempt=" + nextAttempt +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public String getShipmentId() {
+        return shipmentId;
+    }
+
+    public void setShipmentId(String shipmentId) {
+        this.shipmentId = shipmentId;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
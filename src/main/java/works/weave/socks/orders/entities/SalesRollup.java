@@ -0,0 +1,95 @@
+package works.weave.socks.orders.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sales of one hour or one day (UTC), kept up to date with {@code $inc} upserts as orders are placed. The id is the
+ * granularity and the start of the bucket, e.g. {@code HOUR:2017-03-01T14}; {@code units} maps item ids to the
+ * number of units sold.
+ */
+@Document(collection = "salesRollups")
+@CompoundIndex(name = "granularity_bucketStart", def = "{'granularity': 1, 'bucketStart': 1}")
+public class SalesRollup {
+    public static final String HOUR = "HOUR";
+    public static final String DAY = "DAY";
+
+    @Id
+    private String id;
+
+    private String granularity;
+
+    private Date bucketStart;
+
+    private long orderCount;
+
+    private double revenue;
+
+    private Map<String, Long> units = new HashMap<>();
+
+    public SalesRollup() {
+    }
+
+    @Override
+    public String toString() {
+        return "SalesRollup{" +
+                "id='" + id + '\'' +
+                ", orderCount=" + orderCount +
+                ", revenue=" + revenue +
+                ", units=" + units +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Date bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(double revenue) {
+        this.revenue = revenue;
+    }
+
+    public Map<String, Long> getUnits() {
+        return units;
+    }
+
+    public void setUnits(Map<String, Long> units) {
+        this.units = units;
+    }
+}
@@ -0,0 +1,82 @@
+package works.weave.socks.orders.middleware;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gradient based concurrency limit. The limit is scaled by the ratio of the long-term to the short-term latency, so
+ * it shrinks as soon as requests get slower than usual and grows by about {@code sqrt(limit)} while latency holds.
+ * The limit only grows while at least half of it is in use, so an idle period does not leave it inflated.
+ */
+class AdaptiveConcurrencyLimiter {
+    private static final double TOLERANCE = 1.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double shortDecay;
+    private final double longDecay;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double shortRtt;
+    private double longRtt;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double smoothing, int shortWindow,
+                               int longWindow) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.shortDecay = 2.0 / (shortWindow + 1);
+        this.longDecay = 2.0 / (longWindow + 1);
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a permit taken with {@link #tryAcquire()} and feeds the request's latency into the limit.
+     */
+    void release(long latencyNanos) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        update(latencyNanos, inFlightAtCompletion);
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long latencyNanos, int inFlightAtCompletion) {
+        if (longRtt == 0) {
+            shortRtt = latencyNanos;
+            longRtt = latencyNanos;
+            return;
+        }
+        shortRtt += (latencyNanos - shortRtt) * shortDecay;
+        longRtt += (latencyNanos - longRtt) * longDecay;
+        if (longRtt / shortRtt > 2) {
+            // Latency dropped for good; let the baseline follow it down instead of growing the limit unchecked.
+            longRtt *= 0.95;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        double next = limit * (1 - smoothing) + target * smoothing;
+        if (next > limit && inFlightAtCompletion < limit / 2) {
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -0,0 +1,151 @@
+package works.weave.socks.orders.middleware;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptorAdapter;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Adaptive concurrency limit for {@code POST /orders} when {@code checkout.limit.enabled=true}. Checkouts over the
+ * current limit are answered with a 503 right away instead of piling up on request threads; the limit itself follows
+ * checkout latency, see {@link AdaptiveConcurrencyLimiter}. An async checkout gives its permit back when the async
+ * request completes, whether or not it is dispatched again, and never more than once.
+ */
+public class ConcurrencyLimitInterceptor implements AsyncHandlerInterceptor {
+    static final Counter rejected = Counter.build()
+            .name("checkout_concurrency_rejected_total")
+            .help("Checkouts rejected because the concurrency limit was reached.")
+            .register();
+
+    private static final String permitKey = "concurrencyLimitPermit";
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Value("${checkout.limit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${checkout.limit.initial:20}")
+    private int initialLimit;
+
+    @Value("${checkout.limit.min:5}")
+    private int minLimit;
+
+    @Value("${checkout.limit.max:500}")
+    private int maxLimit;
+
+    @Value("${checkout.limit.smoothing:0.2}")
+    private double smoothing;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @PostConstruct
+    public void init() {
+        limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, smoothing, 10, 600);
+        if (enabled) {
+            LOG.info("Checkout concurrency limit: initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit);
+            new LimitCollector().register();
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, Object o)
+            throws Exception {
+        // Async checkouts are dispatched twice; the permit is taken on the first dispatch only.
+        if (!enabled || !"POST".equals(httpServletRequest.getMethod())
+                || httpServletRequest.getAttribute(permitKey) != null) {
+            return true;
+        }
+        if (!limiter.tryAcquire()) {
+            rejected.inc();
+            httpServletResponse.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            httpServletResponse.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "Too many checkouts in progress, try again later.");
+            return false;
+        }
+        Permit permit = new Permit();
+        httpServletRequest.setAttribute(permitKey, permit);
+        // Registered before the handler runs so that the async manager picks them up; they fire when the async
+        // request completes, times out or fails, even if it is never dispatched back to this interceptor.
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(httpServletRequest);
+        asyncManager.registerDeferredResultInterceptor(permitKey, new DeferredResultProcessingInterceptorAdapter() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, DeferredResult<T> deferredResult) {
+                permit.release();
+            }
+        });
+        asyncManager.registerCallableInterceptor(permitKey, new CallableProcessingInterceptorAdapter() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                permit.release();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, Object o,
+            ModelAndView modelAndView) throws Exception {
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+            Object o, Exception e) throws Exception {
+        Object permit = httpServletRequest.getAttribute(permitKey);
+        if (permit != null) {
+            ((Permit) permit).release();
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse, Object o) throws Exception {
+        // The permit is held until the async request completes, see preHandle.
+    }
+
+    private class Permit {
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private class LimitCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            return Arrays.asList(
+                    gauge("checkout_concurrency_limit", "Current adaptive checkout concurrency limit.",
+                            limiter.getLimit()),
+                    gauge("checkout_in_flight", "Checkouts currently holding a concurrency permit.",
+                            limiter.getInFlight()));
+        }
+
+        private MetricFamilySamples gauge(String name, String help, double value) {
+            return new MetricFamilySamples(name, Type.GAUGE, help, Collections.singletonList(
+                    new MetricFamilySamples.Sample(name, Collections.emptyList(), Collections.emptyList(), value)));
+        }
+    }
+}
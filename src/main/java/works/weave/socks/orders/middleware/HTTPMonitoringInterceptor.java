@@ -112,7 +112,10 @@ public class HTTPMonitoringInterceptor implements HandlerInterceptor {
     @Override
     public boolean preHandle(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, Object o)
             throws Exception {
-        httpServletRequest.setAttribute(startTimeKey, System.nanoTime());
+        // Async requests (non-blocking checkout) are dispatched twice; keep the time of the first dispatch.
+        if (httpServletRequest.getAttribute(startTimeKey) == null) {
+            httpServletRequest.setAttribute(startTimeKey, System.nanoTime());
+        }
         return true;
     }
 
@@ -0,0 +1,9 @@
+package works.weave.socks.orders.repositories;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import works.weave.socks.orders.entities.PendingShipment;
+
+@RepositoryRestResource(exported = false)
+public interface PendingShipmentRepository extends MongoRepository<PendingShipment, String> {
+}
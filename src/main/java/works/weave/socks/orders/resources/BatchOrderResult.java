@@ -0,0 +1,66 @@
+package works.weave.socks.orders.resources;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+/**
+ * Outcome of one order of a {@code POST /orders/batch} request. {@code index} is the position of the order in the
+ * request; exactly one of {@code order} and {@code error} is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchOrderResult {
+    private int index;
+    private int status = 201;
+    private CustomerOrder order;
+    private String error;
+
+    // For jackson
+    public BatchOrderResult() {
+    }
+
+    public BatchOrderResult(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOrderResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", order=" + order +
+                ", error=" + error +
+                '}';
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public CustomerOrder getOrder() {
+        return order;
+    }
+
+    public void setOrder(CustomerOrder order) {
+        this.order = order;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
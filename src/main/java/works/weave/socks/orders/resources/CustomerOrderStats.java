@@ -0,0 +1,67 @@
+package works.weave.socks.orders.resources;
+
+import java.util.Date;
+
+/**
+ * Order statistics of one customer, as shown on the account page. {@code lastOrderDate} is absent for customers
+ * without orders.
+ */
+public class CustomerOrderStats {
+    private String customerId;
+    private long orderCount;
+    private Date lastOrderDate;
+    private double lifetimeSpend;
+
+    // For jackson
+    public CustomerOrderStats() {
+    }
+
+    public CustomerOrderStats(String customerId, long orderCount, Date lastOrderDate, double lifetimeSpend) {
+        this.customerId = customerId;
+        this.orderCount = orderCount;
+        this.lastOrderDate = lastOrderDate;
+        this.lifetimeSpend = lifetimeSpend;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerOrderStats{" +
+                "customerId='" + customerId + '\'' +
+                ", orderCount=" + orderCount +
+                ", lastOrderDate=" + lastOrderDate +
+                ", lifetimeSpend=" + lifetimeSpend +
+                '}';
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public Date getLastOrderDate() {
+        return lastOrderDate;
+    }
+
+    public void setLastOrderDate(Date lastOrderDate) {
+        this.lastOrderDate = lastOrderDate;
+    }
+
+    public double getLifetimeSpend() {
+        return lifetimeSpend;
+    }
+
+    public void setLifetimeSpend(double lifetimeSpend) {
+        this.lifetimeSpend = lifetimeSpend;
+    }
+}
@@ -0,0 +1,60 @@
+package works.weave.socks.orders.resources;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated order listing, of full orders or of a view of them. {@code next} is the
+ * continuation token of the following page and is absent on the last page; {@code total} is only present when it
+ * was asked for.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderPage<T> {
+    private List<T> orders;
+    private String next;
+    private Long total;
+
+    // For jackson
+    public OrderPage() {
+    }
+
+    public OrderPage(List<T> orders, String next, Long total) {
+        this.orders = orders;
+        this.next = next;
+        this.total = total;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderPage{" +
+                "orders=" + orders.size() +
+                ", next=" + next +
+                ", total=" + total +
+                '}';
+    }
+
+    public List<T> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<T> orders) {
+        this.orders = orders;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+}
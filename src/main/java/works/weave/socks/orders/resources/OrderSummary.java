@@ -0,0 +1,92 @@
+package works.weave.socks.orders.resources;
+
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.Item;
+
+import java.util.Date;
+
+/**
+ * What an order history view shows of an order. {@link #FIELDS} are the only fields that have to be read from Mongo
+ * to build one.
+ */
+public class OrderSummary {
+    public static final String SHIPPED = "SHIPPED";
+    public static final String PENDING = "PENDING";
+
+    public static final String[] FIELDS = {"customerId", "date", "total", "items.quantity", "shipment.id"};
+
+    private String id;
+    private Date date;
+    private float total;
+    private int itemCount;
+    private String shipmentStatus;
+
+    // For jackson
+    public OrderSummary() {
+    }
+
+    public OrderSummary(String id, Date date, float total, int itemCount, String shipmentStatus) {
+        this.id = id;
+        this.date = date;
+        this.total = total;
+        this.itemCount = itemCount;
+        this.shipmentStatus = shipmentStatus;
+    }
+
+    public static OrderSummary of(CustomerOrder order) {
+        int itemCount = order.getItems() == null ? 0 : order.getItems().stream().mapToInt(Item::getQuantity).sum();
+        return new OrderSummary(order.getId(), order.getDate(), order.getTotal(), itemCount,
+                order.getShipment() == null ? PENDING : SHIPPED);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderSummary{" +
+                "id='" + id + '\'' +
+                ", date=" + date +
+                ", total=" + total +
+                ", itemCount=" + itemCount +
+                ", shipmentStatus=" + shipmentStatus +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public float getTotal() {
+        return total;
+    }
+
+    public void setTotal(float total) {
+        this.total = total;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public String getShipmentStatus() {
+        return shipmentStatus;
+    }
+
+    public void setShipmentStatus(String shipmentStatus) {
+        this.shipmentStatus = shipmentStatus;
+    }
+}
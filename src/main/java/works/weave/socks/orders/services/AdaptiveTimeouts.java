@@ -0,0 +1,93 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.config.DownstreamExecutors;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-dependency timeouts for the checkout pipeline. With {@code http.timeouts.adaptive.enabled=true} a dependency's
+ * timeout is the {@code http.timeouts.adaptive.percentile} of its recent latency times
+ * {@code http.timeouts.adaptive.safety-factor}, clamped to {@code http.timeouts.adaptive.min-ms} and
+ * {@code http.timeout}. Until enough latencies have been recorded, and when disabled, {@code http.timeout} applies.
+ */
+@Component
+public class AdaptiveTimeouts {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Value(value = "${http.timeout:5}")
+    private long timeout;
+
+    @Value("${http.timeouts.adaptive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${http.timeouts.adaptive.percentile:99.9}")
+    private double percentile;
+
+    @Value("${http.timeouts.adaptive.safety-factor:3}")
+    private double safetyFactor;
+
+    @Value("${http.timeouts.adaptive.min-ms:100}")
+    private long minMs;
+
+    @Value("${http.timeouts.adaptive.min-samples:200}")
+    private int minSamples;
+
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            LOG.info("Adaptive timeouts: p" + percentile + " x " + safetyFactor + ", between " + minMs + "ms and "
+                    + timeout + "s");
+        }
+        new TimeoutCollector().register();
+    }
+
+    public void record(URI url, long nanos) {
+        latencies.computeIfAbsent(DownstreamExecutors.dependencyOf(url), key -> new LatencyWindow(minSamples))
+                .record(nanos);
+    }
+
+    public long timeoutMillis(URI url) {
+        return timeoutMillis(DownstreamExecutors.dependencyOf(url));
+    }
+
+    private long timeoutMillis(String dependency) {
+        long maxMs = TimeUnit.SECONDS.toMillis(timeout);
+        LatencyWindow window = latencies.get(dependency);
+        if (!enabled || window == null) {
+            return maxMs;
+        }
+        long quantile = window.percentile(percentile);
+        if (quantile < 0) {
+            return maxMs;
+        }
+        long adaptive = (long) (TimeUnit.NANOSECONDS.toMillis(quantile) * safetyFactor);
+        return Math.max(minMs, Math.min(maxMs, adaptive));
+    }
+
+    private class TimeoutCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+            List<String> labelNames = Collections.singletonList("dependency");
+            latencies.keySet().forEach(dependency -> samples.add(new MetricFamilySamples.Sample(
+                    "http_dependency_timeout_seconds", labelNames, Collections.singletonList(dependency),
+                    timeoutMillis(dependency) / 1000.0)));
+            return Collections.singletonList(new MetricFamilySamples("http_dependency_timeout_seconds", Type.GAUGE,
+                    "Timeout currently applied to calls to each downstream dependency.", samples));
+        }
+    }
+}
@@ -38,21 +38,21 @@ import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.hal.Jackson2HalModule;
 import org.springframework.hateoas.mvc.TypeReferences;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import works.weave.socks.orders.config.RestProxyTemplate;
 
-import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 import static org.springframework.hateoas.MediaTypes.HAL_JSON;
 
@@ -64,9 +64,37 @@ public class AsyncGetService {
 
     private final RestTemplate halTemplate;
 
+    private final DownstreamClient client;
+
+    private final ResourceCache resourceCache;
+
+    private final ConditionalGetCache conditionalGetCache;
+
+    private final SingleFlight singleFlight;
+
+    private final DownstreamClient hedgedClient;
+
+    private final AdaptiveTimeouts adaptiveTimeouts;
+
+    private final CircuitBreakers circuitBreakers;
+
+    private final Retries retries;
+
     @Autowired
-    public AsyncGetService(RestProxyTemplate restProxyTemplate) {
+    public AsyncGetService(RestProxyTemplate restProxyTemplate, DownstreamClient client,
+                           ResourceCache resourceCache, ConditionalGetCache conditionalGetCache,
+                           SingleFlight singleFlight, HedgedRequests hedgedRequests,
+                           AdaptiveTimeouts adaptiveTimeouts, CircuitBreakers circuitBreakers,
+                           Retries retries) {
         this.restProxyTemplate = restProxyTemplate;
+        this.client = client;
+        this.resourceCache = resourceCache;
+        this.conditionalGetCache = conditionalGetCache;
+        this.singleFlight = singleFlight;
+        this.hedgedClient = hedgedRequests.wrap(client);
+        this.adaptiveTimeouts = adaptiveTimeouts;
+        this.circuitBreakers = circuitBreakers;
+        this.retries = retries;
         this.halTemplate = new RestTemplate(restProxyTemplate.getRestTemplate().getRequestFactory());
 
         ObjectMapper objectMapper = new ObjectMapper();
@@ -78,43 +106,67 @@ public class AsyncGetService {
         halTemplate.setMessageConverters(Collections.singletonList(halConverter));
     }
 
-    @Async
-    public <T> Future<Resource<T>> getResource(URI url, TypeReferences.ResourceType<T> type)
-            throws InterruptedException, IOException {
-        RequestEntity<Void> request = RequestEntity.get(url).accept(HAL_JSON).build();
-        LOG.debug("Requesting: " + request.toString());
-        Resource<T> body = restProxyTemplate.getRestTemplate().exchange(request, type).getBody();
-        LOG.debug("Received: " + body.toString());
-        return new AsyncResult<>(body);
+    public <T> CompletableFuture<Resource<T>> getResource(URI url, TypeReferences.ResourceType<T> type) {
+        return getResource(url, type, null);
     }
 
-    @Async
-    public <T> Future<Resources<T>> getDataList(URI url, TypeReferences.ResourcesType<T> type)
-            throws InterruptedException, IOException {
+    public <T> CompletableFuture<Resource<T>> getResource(URI url, TypeReferences.ResourceType<T> type,
+                                                          Deadline deadline) {
+        return resourceCache.get(url, type, () -> {
+            RequestEntity<Void> request = RequestEntity.get(url).accept(HAL_JSON).build();
+            return exchange(request, type, deadline);
+        });
+    }
+
+    public <T> CompletableFuture<Resources<T>> getDataList(URI url, TypeReferences.ResourcesType<T> type) {
         RequestEntity<Void> request = RequestEntity.get(url).accept(HAL_JSON).build();
-        LOG.debug("Requesting: " + request.toString());
-        Resources<T> body = restProxyTemplate.getRestTemplate().exchange(request, type).getBody();
-        LOG.debug("Received: " + body.toString());
-        return new AsyncResult<>(body);
+        return exchange(request, type, null);
+    }
+
+    public <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type) {
+        return getDataList(url, type, null);
     }
 
-    @Async
-    public <T> Future<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type)
-            throws InterruptedException, IOException {
+    public <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type,
+                                                      Deadline deadline) {
         RequestEntity<Void> request = RequestEntity.get(url).accept(MediaType.APPLICATION_JSON).build();
-        LOG.debug("Requesting: " + request.toString());
-        List<T> body = restProxyTemplate.getRestTemplate().exchange(request, type).getBody();
-        LOG.debug("Received: " + body.toString());
-        return new AsyncResult<>(body);
+        return exchange(request, type, deadline);
+    }
+
+    public <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
+        return postResource(uri, body, returnType, null);
     }
 
-    @Async
-    public <T, B> Future<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
+    public <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType,
+                                                    Deadline deadline) {
         RequestEntity<B> request = RequestEntity.post(uri).contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON).body(body);
-        LOG.debug("Requesting: " + request.toString());
-        T responseBody = restProxyTemplate.getRestTemplate().exchange(request, returnType).getBody();
-        LOG.debug("Received: " + responseBody);
-        return new AsyncResult<>(responseBody);
+        return exchange(request, returnType, deadline);
+    }
+
+    private <T> CompletableFuture<T> exchange(RequestEntity<?> request, ParameterizedTypeReference<T> type,
+                                              Deadline deadline) {
+        RequestEntity<?> outbound = deadline == null ? request : withDeadline(request, deadline);
+        LOG.debug("Requesting: " + outbound.toString());
+        long start = System.nanoTime();
+        URI url = outbound.getUrl();
+        CompletableFuture<ResponseEntity<T>> pending = HttpMethod.GET.equals(outbound.getMethod())
+                ? singleFlight.execute(outbound, type, () -> retries.execute(outbound,
+                        () -> circuitBreakers.execute(url, () -> conditionalGetCache.exchange(outbound, type,
+                                hedgedClient))))
+                : circuitBreakers.execute(url, () -> client.exchange(outbound, type));
+        return Futures.failUpstream(pending.thenApply(response -> {
+            adaptiveTimeouts.record(url, System.nanoTime() - start);
+            T body = response.getBody();
+            LOG.debug("Received: " + body);
+            return body;
+        }), pending);
+    }
+
+    private static <B> RequestEntity<B> withDeadline(RequestEntity<B> request, Deadline deadline) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(request.getHeaders());
+        headers.set(Deadline.HEADER, String.valueOf(deadline.remainingMillis()));
+        return new RequestEntity<>(request.getBody(), headers, request.getMethod(), request.getUrl());
     }
 }
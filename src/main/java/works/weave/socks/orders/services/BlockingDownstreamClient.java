@@ -0,0 +1,69 @@
+package works.weave.socks.orders.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import works.weave.socks.orders.config.AbortableCall;
+import works.weave.socks.orders.config.DownstreamExecutors;
+import works.weave.socks.orders.config.RestProxyTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Component
+@ConditionalOnProperty(name = "http.non-blocking", havingValue = "false", matchIfMissing = true)
+public class BlockingDownstreamClient implements DownstreamClient {
+    private final RestProxyTemplate restProxyTemplate;
+
+    private final DownstreamExecutors executors;
+
+    @Autowired
+    public BlockingDownstreamClient(RestProxyTemplate restProxyTemplate, DownstreamExecutors executors) {
+        this.restProxyTemplate = restProxyTemplate;
+        this.executors = executors;
+    }
+
+    /**
+     * Runs the call on the pool of the dependency behind the request URI. A saturated pool fails the future right
+     * away, and a request whose {@link Deadline#HEADER} budget ran out while it was queued is not sent; otherwise the
+     * rest of that budget caps the request's socket timeout. Cancelling or failing the returned future aborts the
+     * request, which closes its connection and frees the worker.
+     */
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> exchange(RequestEntity<?> request,
+                                                             ParameterizedTypeReference<T> responseType) {
+        String budget = request.getHeaders().getFirst(Deadline.HEADER);
+        long expiresAt = budget == null ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(budget));
+        AbortableCall call = new AbortableCall();
+        CompletableFuture<ResponseEntity<T>> future = call.abortOnFailure(new CompletableFuture<>());
+        try {
+            executors.forUri(request.getUrl()).execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+                if (budget != null && remainingMs <= 0) {
+                    future.completeExceptionally(new TimeoutException("Deadline passed while queued for "
+                            + request.getUrl()));
+                    return;
+                }
+                try {
+                    RestTemplate restTemplate = restProxyTemplate.getRestTemplate();
+                    future.complete(call.run(budget == null ? 0 : remainingMs,
+                            () -> restTemplate.exchange(request, responseType)));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
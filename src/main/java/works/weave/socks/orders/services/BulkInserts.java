@@ -0,0 +1,47 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import org.springframework.data.mongodb.BulkOperationException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the outcome of a failed unordered bulk insert, in which every document succeeds or fails on its own.
+ */
+final class BulkInserts {
+    private BulkInserts() {
+    }
+
+    /**
+     * A write concern error means the documents were written but not acknowledged as durable, so none of them can
+     * be reported as saved, nor known not to be.
+     */
+    static boolean isWriteConcernError(BulkOperationException e) {
+        return e.getCause() instanceof BulkWriteException
+                && ((BulkWriteException) e.getCause()).getWriteConcernError() != null;
+    }
+
+    /**
+     * Maps the position of every document of the bulk that was not saved to the reason; the others were saved.
+     */
+    static Map<Integer, String> failures(BulkOperationException e, int size) {
+        return failures(e.getErrors(), isWriteConcernError(e) ? e.getMessage() : null, size);
+    }
+
+    static Map<Integer, String> failures(List<BulkWriteError> errors, String writeConcernError, int size) {
+        Map<Integer, String> failures = new HashMap<>();
+        if (writeConcernError != null) {
+            for (int i = 0; i < size; i++) {
+                failures.put(i, writeConcernError);
+            }
+            return failures;
+        }
+        for (BulkWriteError error : errors) {
+            failures.put(error.getIndex(), error.getMessage());
+        }
+        return failures;
+    }
+}
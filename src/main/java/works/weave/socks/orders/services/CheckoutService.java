@@ -0,0 +1,537 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.mvc.TypeReferences;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import works.weave.socks.orders.config.DownstreamExecutors;
+import works.weave.socks.orders.config.OrdersConfigurationProperties;
+import works.weave.socks.orders.entities.*;
+import works.weave.socks.orders.repositories.CustomerOrderRepository;
+import works.weave.socks.orders.resources.BatchOrderResult;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.values.PaymentRequest;
+import works.weave.socks.orders.values.PaymentResponse;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The checkout pipeline behind {@code POST /orders}. Every stage is chained onto the completion of the previous one,
+ * so no thread is parked while the downstream services are working. Callers that want the old blocking behaviour
+ * simply wait on the returned future.
+ */
+@Service
+public class CheckoutService {
+    static final Counter deadlineExceeded = Counter.build()
+            .name("checkout_deadline_exceeded_total")
+            .help("Downstream calls skipped because the checkout deadline had already passed, by dependency.")
+            .labelNames("dependency")
+            .register();
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private OrdersConfigurationProperties config;
+
+    @Autowired
+    private AsyncGetService asyncGetService;
+
+    @Autowired
+    private CustomerOrderRepository customerOrderRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DownstreamExecutors executors;
+
+    @Autowired
+    private ShipmentOutbox shipmentOutbox;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private OrderWriteBuffer orderWriteBuffer;
+
+    @Autowired
+    private AdaptiveTimeouts timeouts;
+
+    @Autowired
+    private SalesRollups salesRollups;
+
+    @Value("${checkout.deadline-ms:10000}")
+    private long deadlineMs;
+
+    @Value("${orders.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @Value("${orders.batch.max-size:1000}")
+    private int batchMaxSize;
+
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "checkout-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Places the order once per {@code idempotencyKey}; without a key every call is a new checkout.
+     */
+    public CompletableFuture<CustomerOrder> placeOrder(NewOrderResource item, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty() || item == null) {
+            return placeOrder(item);
+        }
+        return idempotencyService.execute(idempotencyKey, IdempotencyService.fingerprint(item),
+                markPaid -> placeOrder(item, markPaid));
+    }
+
+    public CompletableFuture<CustomerOrder> placeOrder(NewOrderResource item) {
+        return placeOrder(item, null);
+    }
+
+    private CompletableFuture<CustomerOrder> placeOrder(NewOrderResource item, Runnable markPaid) {
+        CompletableFuture<Checkout> prepared = prepare(item, new Lookups(), markPaid);
+        Executor ordersDb = executors.forDependency("orders-db");
+        if (!orderWriteBuffer.isEnabled()) {
+            return prepared.thenApplyAsync(this::save, ordersDb);
+        }
+        if (shipmentOutbox.isEnabled()) {
+            prepared = prepared.thenApplyAsync(this::enqueueShipment, ordersDb);
+        }
+        return prepared.thenCompose(checkout -> orderWriteBuffer.save(checkout.toOrder()))
+                .thenApply(this::recordSale);
+    }
+
+    /**
+     * Checks out a batch of orders with at most {@code orders.batch.parallelism} in flight. Customer, address, card
+     * and item lookups are shared across the batch, and all successful orders are written with a single bulk insert.
+     * The result has one entry per submitted order, in order.
+     */
+    public CompletableFuture<List<BatchOrderResult>> placeOrders(List<NewOrderResource> items) {
+        if (items == null || items.isEmpty() || items.size() > batchMaxSize) {
+            return failed(new InvalidOrderException(
+                    "Invalid batch request. A batch requires between 1 and " + batchMaxSize + " orders."));
+        }
+        Lookups lookups = new Lookups();
+        List<CompletableFuture<Checkout>> checkouts = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            checkouts.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        Runnable launcher = new Runnable() {
+            @Override
+            public void run() {
+                // Loop while checkouts fail synchronously (e.g. invalid orders) instead of recursing.
+                int i;
+                while ((i = next.getAndIncrement()) < items.size()) {
+                    CompletableFuture<Checkout> checkout = checkouts.get(i);
+                    CompletableFuture<Checkout> prepared = prepare(items.get(i), lookups, null);
+                    prepared.whenComplete((result, e) -> complete(checkout, result, e));
+                    if (!prepared.isDone()) {
+                        prepared.whenComplete((result, e) -> run());
+                        return;
+                    }
+                }
+            }
+        };
+        for (int i = 0; i < Math.max(1, batchParallelism); i++) {
+            launcher.run();
+        }
+        return CompletableFuture.allOf(checkouts.toArray(new CompletableFuture[checkouts.size()]))
+                .handleAsync((ignored, e) -> saveAll(checkouts), executors.forDependency("orders-db"));
+    }
+
+    /**
+     * Looks up the order's resources, authorises payment and requests or defers the shipment. {@code markPaid}, if
+     * given, runs on an orders-db thread right after payment has been authorised; nothing further happens if it
+     * throws.
+     */
+    private CompletableFuture<Checkout> prepare(NewOrderResource item, Lookups lookups, Runnable markPaid) {
+        if (item == null || item.address == null || item.customer == null || item.card == null
+                || item.items == null) {
+            return failed(new InvalidOrderException(
+                    "Invalid order request. Order requires customer, address, card and items."));
+        }
+
+        Deadline deadline = Deadline.after(deadlineMs);
+        LOG.debug("Starting calls");
+        CompletableFuture<Resource<Address>> addressFuture = lookups.resource(item.address,
+                new TypeReferences.ResourceType<Address>() {
+                }, deadline);
+        CompletableFuture<Resource<Customer>> customerFuture = lookups.resource(item.customer,
+                new TypeReferences.ResourceType<Customer>() {
+                }, deadline);
+        CompletableFuture<Resource<Card>> cardFuture = lookups.resource(item.card,
+                new TypeReferences.ResourceType<Card>() {
+                }, deadline);
+        CompletableFuture<List<Item>> itemsFuture = lookups.items(item.items, deadline);
+        LOG.debug("End of calls.");
+
+        CompletableFuture<Checkout> paid = CompletableFuture
+                .allOf(addressFuture, customerFuture, cardFuture, itemsFuture)
+                .thenApply(ignored -> new Checkout(
+                        addressFuture.join().getContent(),
+                        customerFuture.join(),
+                        cardFuture.join().getContent(),
+                        itemsFuture.join(),
+                        deadline))
+                .thenCompose(this::authorisePayment);
+        if (markPaid != null) {
+            paid = paid.thenApplyAsync(checkout -> {
+                markPaid.run();
+                return checkout;
+            }, executors.forDependency("orders-db"));
+        }
+        if (shipmentOutbox.isEnabled()) {
+            return paid.thenApply(this::deferShipment);
+        }
+        return paid.thenCompose(this::ship);
+    }
+
+    private CompletableFuture<Checkout> authorisePayment(Checkout checkout) {
+        // Call payment service to make sure they've paid
+        PaymentRequest paymentRequest = new PaymentRequest(
+                checkout.address,
+                checkout.card,
+                checkout.customer.getContent(),
+                checkout.amount);
+        LOG.info("Sending payment request: " + paymentRequest);
+        return within(config.getPaymentUri(), checkout.deadline, () -> asyncGetService.postResource(
+                config.getPaymentUri(),
+                paymentRequest,
+                new ParameterizedTypeReference<PaymentResponse>() {
+                },
+                checkout.deadline))
+                .thenApply(paymentResponse -> {
+                    LOG.info("Received payment response: " + paymentResponse);
+                    if (paymentResponse == null) {
+                        throw new PaymentDeclinedException("Unable to parse authorisation packet");
+                    }
+                    if (!paymentResponse.isAuthorised()) {
+                        throw new PaymentDeclinedException(paymentResponse.getMessage());
+                    }
+                    return checkout;
+                });
+    }
+
+    private CompletableFuture<Checkout> ship(Checkout checkout) {
+        checkout.customerId = parseId(checkout.customer.getId().getHref());
+        return within(config.getShippingUri(), checkout.deadline, () -> asyncGetService.postResource(
+                config.getShippingUri(),
+                new Shipment(checkout.customerId),
+                new ParameterizedTypeReference<Shipment>() {
+                },
+                checkout.deadline))
+                .thenApply(shipment -> {
+                    checkout.shipment = shipment;
+                    return checkout;
+                });
+    }
+
+    /**
+     * Outbox mode: the order is answered without a shipment. The outbox entry is written first, under the id the
+     * order is then saved with, so a crash in between leaves an orphaned entry rather than an unshipped order.
+     */
+    private Checkout deferShipment(Checkout checkout) {
+        checkout.customerId = parseId(checkout.customer.getId().getHref());
+        checkout.orderId = new ObjectId().toHexString();
+        checkout.pendingShipment = new PendingShipment(checkout.orderId, checkout.customerId,
+                UUID.randomUUID().toString());
+        return checkout;
+    }
+
+    private Checkout enqueueShipment(Checkout checkout) {
+        if (checkout.pendingShipment != null) {
+            shipmentOutbox.enqueue(checkout.pendingShipment);
+        }
+        return checkout;
+    }
+
+    private CustomerOrder save(Checkout checkout) {
+        CustomerOrder order = enqueueShipment(checkout).toOrder();
+        LOG.debug("Received data: " + order.toString());
+
+        CustomerOrder savedOrder = customerOrderRepository.save(order);
+        LOG.debug("Saved order: " + savedOrder);
+        return recordSale(savedOrder);
+    }
+
+    private CustomerOrder recordSale(CustomerOrder order) {
+        salesRollups.record(order);
+        return order;
+    }
+
+    /**
+     * Saves the checked out orders of a batch with one unordered bulk insert and reports each order's own outcome.
+     * Orders rejected by Mongo get their outbox entry removed; only when it is unknown whether an order was written
+     * is the entry left for the outbox to drop as an orphan.
+     */
+    private List<BatchOrderResult> saveAll(List<CompletableFuture<Checkout>> checkouts) {
+        List<BatchOrderResult> results = new ArrayList<>();
+        List<BatchOrderResult> placed = new ArrayList<>();
+        List<PendingShipment> pendingShipments = new ArrayList<>();
+        List<CustomerOrder> orders = new ArrayList<>();
+        for (int i = 0; i < checkouts.size(); i++) {
+            BatchOrderResult result = new BatchOrderResult(i);
+            try {
+                Checkout checkout = checkouts.get(i).join();
+                if (checkout.pendingShipment != null) {
+                    pendingShipments.add(checkout.pendingShipment);
+                }
+                CustomerOrder order = checkout.toOrder();
+                if (order.getId() == null) {
+                    // The bulk insert does not write generated ids back to the entity.
+                    order.setId(new ObjectId().toHexString());
+                }
+                orders.add(order);
+                placed.add(result);
+                result.setOrder(order);
+            } catch (RuntimeException e) {
+                fail(result, e);
+            }
+            results.add(result);
+        }
+        if (orders.isEmpty()) {
+            return results;
+        }
+        Map<Integer, String> failures = Collections.emptyMap();
+        try {
+            shipmentOutbox.enqueue(pendingShipments);
+            try {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerOrder.class);
+                bulk.insert(orders);
+                bulk.execute();
+            } catch (BulkOperationException e) {
+                LOG.warn("Unable to save some batched orders: " + e.getMessage());
+                failures = BulkInserts.failures(e, orders.size());
+                if (!BulkInserts.isWriteConcernError(e)) {
+                    List<String> rejected = new ArrayList<>();
+                    for (int i : failures.keySet()) {
+                        rejected.add(orders.get(i).getId());
+                    }
+                    shipmentOutbox.cancel(rejected);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Unable to save batched orders", e);
+            placed.forEach(result -> {
+                result.setOrder(null);
+                fail(result, e);
+            });
+            return results;
+        }
+        for (int i = 0; i < orders.size(); i++) {
+            String failure = failures.get(i);
+            if (failure == null) {
+                salesRollups.record(orders.get(i));
+            } else {
+                placed.get(i).setOrder(null);
+                fail(placed.get(i), new IllegalStateException("Unable to save order: " + failure));
+            }
+        }
+        LOG.debug("Saved " + (orders.size() - failures.size()) + " of " + checkouts.size() + " batched orders");
+        return results;
+    }
+
+    private static void fail(BatchOrderResult result, Throwable e) {
+        RuntimeException error = translate(e);
+        ResponseStatus status = AnnotationUtils.findAnnotation(error.getClass(), ResponseStatus.class);
+        result.setStatus(status != null ? status.value().value() : HttpStatus.INTERNAL_SERVER_ERROR.value());
+        result.setError(error.getMessage());
+    }
+
+    /**
+     * Calls {@code url}'s dependency and fails the returned future with a {@link TimeoutException} if it has not
+     * answered within its current timeout or the time left before {@code deadline}, whichever is shorter. The failure
+     * travels back down the call chain and aborts the request still in flight. Once the deadline has passed the call
+     * is not made at all.
+     */
+    private <T> CompletableFuture<T> within(URI url, Deadline deadline, Supplier<CompletableFuture<T>> call) {
+        if (deadline.isExpired()) {
+            deadlineExceeded.labels(DownstreamExecutors.dependencyOf(url)).inc();
+            return failed(new TimeoutException("Checkout deadline passed before calling " + url));
+        }
+        CompletableFuture<T> future = call.get();
+        long dependencyTimeoutMs = timeouts.timeoutMillis(url);
+        long timeoutMs = Math.min(dependencyTimeoutMs, deadline.remainingMillis());
+        ScheduledFuture<?> timer = timeoutScheduler.schedule(() -> {
+            if (future.completeExceptionally(new TimeoutException("No response within " + timeoutMs + "ms"))
+                    && timeoutMs == dependencyTimeoutMs) {
+                // Count the timeout as a sample, or a dependency that slows down could never raise its timeout.
+                timeouts.record(url, TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, e) -> timer.cancel(false));
+        return future;
+    }
+
+    private String parseId(String href) {
+        Pattern idPattern = Pattern.compile("[\\w-]+$");
+        Matcher matcher = idPattern.matcher(href);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Could not parse user ID from: " + href);
+        }
+        return matcher.group(0);
+    }
+
+    private float calculateTotal(List<Item> items) {
+        float amount = 0F;
+        float shipping = 4.99F;
+        amount += items.stream().mapToDouble(i -> i.getQuantity() * i.getUnitPrice()).sum();
+        amount += shipping;
+        return amount;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * Maps a failure of the checkout pipeline onto the exception the controllers should surface.
+     */
+    public static RuntimeException translate(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof IllegalStateException) {
+            return (IllegalStateException) e;
+        }
+        if (e instanceof RejectedExecutionException) {
+            return new ServiceUnavailableException("Unable to create order: " + e.getMessage());
+        }
+        if (e instanceof TimeoutException) {
+            return new IllegalStateException("Unable to create order due to timeout from one of the services.", e);
+        }
+        return new IllegalStateException("Unable to create order due to unspecified IO error.", e);
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, T result, Throwable e) {
+        if (e != null) {
+            future.completeExceptionally(e);
+        } else {
+            future.complete(result);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Downstream lookups of one checkout, or of a whole batch: each URI is fetched once and shared by every order
+     * that references it.
+     */
+    private class Lookups {
+        private final Map<URI, CompletableFuture<?>> fetched = new ConcurrentHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        private <T> CompletableFuture<Resource<T>> resource(URI uri, TypeReferences.ResourceType<T> type,
+                                                            Deadline deadline) {
+            return (CompletableFuture<Resource<T>>) fetched.computeIfAbsent(uri,
+                    key -> within(key, deadline, () -> asyncGetService.getResource(key, type, deadline)));
+        }
+
+        @SuppressWarnings("unchecked")
+        private CompletableFuture<List<Item>> items(URI uri, Deadline deadline) {
+            return (CompletableFuture<List<Item>>) fetched.computeIfAbsent(uri,
+                    key -> within(key, deadline, () -> asyncGetService.getDataList(key,
+                            new ParameterizedTypeReference<List<Item>>() {
+                            }, deadline)));
+        }
+    }
+
+    private class Checkout {
+        private final Address address;
+        private final Resource<Customer> customer;
+        private final Card card;
+        private final List<Item> items;
+        private final float amount;
+        private final Deadline deadline;
+        private String customerId;
+        private String orderId;
+        private Shipment shipment;
+        private PendingShipment pendingShipment;
+
+        private Checkout(Address address, Resource<Customer> customer, Card card, List<Item> items,
+                         Deadline deadline) {
+            this.address = address;
+            this.customer = customer;
+            this.card = card;
+            this.items = items;
+            this.amount = calculateTotal(items);
+            this.deadline = deadline;
+        }
+
+        private CustomerOrder toOrder() {
+            return new CustomerOrder(
+                    orderId,
+                    customerId,
+                    customer.getContent(),
+                    address,
+                    card,
+                    items,
+                    shipment,
+                    Calendar.getInstance().getTime(),
+                    amount);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
+    public static class PaymentDeclinedException extends IllegalStateException {
+        public PaymentDeclinedException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    public static class ServiceUnavailableException extends IllegalStateException {
+        public ServiceUnavailableException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
+    public static class InvalidOrderException extends IllegalStateException {
+        public InvalidOrderException(String s) {
+            super(s);
+        }
+    }
+}
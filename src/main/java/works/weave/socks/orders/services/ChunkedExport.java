@@ -0,0 +1,154 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Writes a date range as newline delimited lines, oldest first. The range is cut into consecutive chunks of at most
+ * {@code maxChunkMs}; up to {@code parallelism} of them are read ahead on {@code readers}, each into a queue of at
+ * most {@code bufferSize} lines, while the caller writes the chunks out in order.
+ */
+class ChunkedExport {
+    static final Counter exported = Counter.build()
+            .name("order_exported_documents_total")
+            .help("Orders written by exports.")
+            .register();
+
+    private static final byte[] END = new byte[0];
+
+    private static final byte NEWLINE = '\n';
+
+    /**
+     * Reads the lines of {@code [from, to)} in order and hands each one to {@code sink}, stopping early once
+     * {@code sink} returns false.
+     */
+    interface Reader {
+        void read(Date from, Date to, Predicate<byte[]> sink) throws IOException;
+    }
+
+    private final Executor readers;
+    private final int parallelism;
+    private final long maxChunkMs;
+    private final int bufferSize;
+    private final Reader reader;
+
+    ChunkedExport(Executor readers, int parallelism, long maxChunkMs, int bufferSize, Reader reader) {
+        this.readers = readers;
+        this.parallelism = parallelism;
+        this.maxChunkMs = maxChunkMs;
+        this.bufferSize = bufferSize;
+        this.reader = reader;
+    }
+
+    /**
+     * Writes the lines of {@code [from, to)} to {@code out} and returns how many were written. A chunk that fails
+     * to read fails the export once the chunks before it have been written.
+     */
+    long writeTo(Date from, Date to, OutputStream out) throws IOException {
+        Deque<Chunk> reading = new ArrayDeque<>();
+        try {
+            long width = chunkWidth(from.getTime(), to.getTime());
+            long next = from.getTime();
+            long written = 0;
+            while (next < to.getTime() || !reading.isEmpty()) {
+                while (reading.size() < parallelism && next < to.getTime()) {
+                    long end = Math.min(next + width, to.getTime());
+                    Chunk chunk = new Chunk(new Date(next), new Date(end));
+                    readers.execute(chunk);
+                    reading.add(chunk);
+                    next = end;
+                }
+                written += reading.peek().writeTo(out);
+                reading.remove();
+            }
+            return written;
+        } finally {
+            reading.forEach(Chunk::cancel);
+        }
+    }
+
+    /**
+     * Small ranges are split so every reader gets a share; large ones are capped at {@code maxChunkMs}.
+     */
+    long chunkWidth(long from, long to) {
+        long perReader = (to - from + parallelism - 1) / parallelism;
+        return Math.max(1, Math.min(maxChunkMs, perReader));
+    }
+
+    /**
+     * One sub-range, read into a bounded queue of lines that ends with {@link #END}.
+     */
+    private class Chunk implements Runnable {
+        private final Date from;
+        private final Date to;
+        private final BlockingQueue<byte[]> lines = new ArrayBlockingQueue<>(bufferSize);
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+
+        private Chunk(Date from, Date to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            try {
+                reader.read(from, to, this::offer);
+            } catch (Throwable e) {
+                failure = e;
+            }
+            offer(END);
+        }
+
+        /**
+         * Blocks until the writer has room for the line; returns false once the export has been given up.
+         */
+        private boolean offer(byte[] line) {
+            try {
+                while (!cancelled) {
+                    if (lines.offer(line, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private long writeTo(OutputStream out) throws IOException {
+            long written = 0;
+            try {
+                for (byte[] line = lines.take(); line != END; line = lines.take()) {
+                    out.write(line);
+                    out.write(NEWLINE);
+                    written++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while exporting orders from " + from);
+            } finally {
+                exported.inc(written);
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Unable to read orders from " + from + " to " + to, failure);
+            }
+            return written;
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package works.weave.socks.orders.services;
+
+import works.weave.socks.orders.config.CircuitBreakerConfigurationProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker for one dependency. While closed it tracks the outcome of the last
+ * {@code window-size} calls and opens once, after at least {@code minimum-calls}, the failure rate or the slow call
+ * rate reaches its threshold. An open breaker rejects calls for {@code open-ms}, then lets {@code half-open-calls}
+ * probes through; they decide whether it closes again or reopens.
+ */
+class CircuitBreaker {
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    interface Listener {
+        void onTransition(State from, State to);
+    }
+
+    private final CircuitBreakerConfigurationProperties properties;
+    private final LongSupplier clock;
+    private final Listener listener;
+
+    private State state = State.CLOSED;
+    private boolean[] failed;
+    private boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int probesPermitted;
+
+    CircuitBreaker(CircuitBreakerConfigurationProperties properties, LongSupplier clock, Listener listener) {
+        this.properties = properties;
+        this.clock = clock;
+        this.listener = listener;
+        reset(properties.getWindowSize());
+    }
+
+    synchronized State getState() {
+        long openNanos = TimeUnit.MILLISECONDS.toNanos(properties.getOpenMs());
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * Returns whether a call may go ahead. Every permitted call must be followed by {@link #onResult}, or by
+     * {@link #onCancelled} if it was abandoned before it had an outcome.
+     */
+    synchronized boolean tryAcquire() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probesPermitted < properties.getHalfOpenCalls()) {
+                    probesPermitted++;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    synchronized void onResult(long durationNanos, boolean failure) {
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened.
+            return;
+        }
+        record(failure, durationNanos >= TimeUnit.MILLISECONDS.toNanos(properties.getSlowCallMs()));
+        if (state == State.HALF_OPEN) {
+            if (calls >= properties.getHalfOpenCalls()) {
+                transitionTo(overThreshold() ? State.OPEN : State.CLOSED);
+            }
+        } else if (calls >= properties.getMinimumCalls() && overThreshold()) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * Forgets a permitted call that was cancelled: it says nothing about the dependency, so it is not recorded, but a
+     * half-open probe slot it held is given back.
+     */
+    synchronized void onCancelled() {
+        if (state == State.HALF_OPEN && probesPermitted > 0) {
+            probesPermitted--;
+        }
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private boolean overThreshold() {
+        return failures * 100.0 / calls >= properties.getFailureRateThreshold()
+                || slowCalls * 100.0 / calls >= properties.getSlowCallRateThreshold();
+    }
+
+    private void transitionTo(State to) {
+        State from = state;
+        state = to;
+        if (to == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+        // Half-open probes are judged on their own, and a closed breaker starts from a clean window.
+        reset(to == State.HALF_OPEN ? properties.getHalfOpenCalls() : properties.getWindowSize());
+        probesPermitted = 0;
+        listener.onTransition(from, to);
+    }
+
+    private void reset(int size) {
+        failed = new boolean[Math.max(1, size)];
+        slow = new boolean[Math.max(1, size)];
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
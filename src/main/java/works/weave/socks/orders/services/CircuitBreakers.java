@@ -0,0 +1,119 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import works.weave.socks.orders.config.CircuitBreakerConfigurationProperties;
+import works.weave.socks.orders.config.DownstreamExecutors;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * One {@link CircuitBreaker} per downstream dependency (URI host). Calls to a dependency whose breaker is open fail
+ * right away with {@link CircuitOpenException}, which the controllers turn into a 503. 4xx responses do not count as
+ * failures, and cancelled calls are not recorded at all.
+ */
+@Component
+public class CircuitBreakers {
+    static final Counter transitions = Counter.build()
+            .name("circuit_breaker_transitions_total")
+            .help("Circuit breaker state changes by dependency.")
+            .labelNames("dependency", "from", "to")
+            .register();
+
+    static final Counter rejected = Counter.build()
+            .name("circuit_breaker_rejected_total")
+            .help("Calls rejected by an open circuit breaker, by dependency.")
+            .labelNames("dependency")
+            .register();
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    private final CircuitBreakerConfigurationProperties properties;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CircuitBreakers(CircuitBreakerConfigurationProperties properties) {
+        this.properties = properties;
+        new StateCollector().register();
+    }
+
+    public <T> CompletableFuture<T> execute(URI url, Supplier<CompletableFuture<T>> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        String dependency = DownstreamExecutors.dependencyOf(url);
+        CircuitBreaker breaker = breakers.computeIfAbsent(dependency, key -> new CircuitBreaker(properties,
+                System::nanoTime, (from, to) -> {
+                    LOG.warn("Circuit breaker for " + key + " changed from " + from + " to " + to);
+                    transitions.labels(key, from.name(), to.name()).inc();
+                }));
+        if (!breaker.tryAcquire()) {
+            rejected.labels(dependency).inc();
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new CircuitOpenException("Circuit breaker open for " + dependency));
+            return future;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            breaker.onResult(System.nanoTime() - start, true);
+            throw e;
+        }
+        return Futures.failUpstream(response.whenComplete((result, e) -> {
+            Throwable cause = unwrap(e);
+            if (cause instanceof CancellationException) {
+                breaker.onCancelled();
+            } else {
+                boolean failure = cause != null && !(cause instanceof HttpClientErrorException);
+                breaker.onResult(System.nanoTime() - start, failure);
+            }
+        }), response);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    public static class CircuitOpenException extends IllegalStateException {
+        public CircuitOpenException(String s) {
+            super(s);
+        }
+    }
+
+    private class StateCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+            List<String> labelNames = Arrays.asList("dependency", "state");
+            breakers.forEach((dependency, breaker) -> {
+                CircuitBreaker.State current = breaker.getState();
+                for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                    samples.add(new MetricFamilySamples.Sample("circuit_breaker_state", labelNames,
+                            Arrays.asList(dependency, state.name()), state == current ? 1 : 0));
+                }
+            });
+            return Arrays.asList(new MetricFamilySamples("circuit_breaker_state", Type.GAUGE,
+                    "1 for the state each dependency's circuit breaker is in, 0 otherwise.", samples));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package works.weave.socks.orders.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.prometheus.client.Counter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.config.DownstreamExecutors;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP revalidation for downstream GETs. The {@code ETag}/{@code Last-Modified} of each response is remembered
+ * together with the decoded body; the next request for the same URI is sent with {@code If-None-Match} /
+ * {@code If-Modified-Since} and a {@code 304} is answered from the remembered body without decoding anything. Bodies
+ * are remembered per URI, accept header and target type, so a {@code 304} never hands out a body decoded as another
+ * type.
+ */
+@Component
+public class ConditionalGetCache {
+    static final Counter revalidations = Counter.build()
+            .name("http_conditional_get_total")
+            .help("Conditional downstream GETs by dependency and outcome.")
+            .labelNames("dependency", "result")
+            .register();
+
+    @Value("${http.revalidation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${http.revalidation.maximum-size:10000}")
+    private long maximumSize;
+
+    private Cache<String, Validated> validated;
+
+    public ConditionalGetCache() {
+    }
+
+    ConditionalGetCache(long maximumSize) {
+        this.enabled = true;
+        this.maximumSize = maximumSize;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        validated = Caffeine.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<ResponseEntity<T>> exchange(RequestEntity<?> request,
+                                                             ParameterizedTypeReference<T> responseType,
+                                                             DownstreamClient client) {
+        if (!enabled) {
+            return client.exchange(request, responseType);
+        }
+        URI url = request.getUrl();
+        String key = key(request, responseType);
+        Validated previous = validated.getIfPresent(key);
+        RequestEntity<?> conditional = previous == null ? request : withValidators(request, previous);
+        String dependency = DownstreamExecutors.dependencyOf(url);
+        CompletableFuture<ResponseEntity<T>> pending = client.exchange(conditional, responseType);
+        return Futures.failUpstream(pending.thenApply(response -> {
+            if (previous != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                revalidations.labels(dependency, "not_modified").inc();
+                return new ResponseEntity<>((T) previous.body, response.getHeaders(), HttpStatus.OK);
+            }
+            if (previous != null) {
+                revalidations.labels(dependency, "modified").inc();
+            }
+            remember(key, response);
+            return response;
+        }), pending);
+    }
+
+    // Same key as SingleFlight, without the method: only GETs are revalidated.
+    static String key(RequestEntity<?> request, ParameterizedTypeReference<?> responseType) {
+        return request.getUrl() + " " + request.getHeaders().getAccept() + " " + responseType.getType().getTypeName();
+    }
+
+    private void remember(String key, ResponseEntity<?> response) {
+        String eTag = response.getHeaders().getETag();
+        String lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+        if (response.getBody() == null || (eTag == null && lastModified == null)) {
+            validated.invalidate(key);
+            return;
+        }
+        validated.put(key, new Validated(eTag, lastModified, response.getBody()));
+    }
+
+    private static RequestEntity<?> withValidators(RequestEntity<?> request, Validated previous) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(request.getHeaders());
+        if (previous.eTag != null) {
+            headers.setIfNoneMatch(previous.eTag);
+        }
+        if (previous.lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified);
+        }
+        return new RequestEntity<>(request.getBody(), headers, request.getMethod(), request.getUrl());
+    }
+
+    private static class Validated {
+        private final String eTag;
+        private final String lastModified;
+        private final Object body;
+
+        private Validated(String eTag, String lastModified, Object body) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+}
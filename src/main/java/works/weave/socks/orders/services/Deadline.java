@@ -0,0 +1,34 @@
+package works.weave.socks.orders.services;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which a checkout has to be finished. Outbound requests carry the time left in
+ * {@link #HEADER}, in milliseconds, so downstream services can drop work whose caller has already given up.
+ */
+public class Deadline {
+    public static final String HEADER = "X-Request-Timeout-Ms";
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remainingMillis() + "ms}";
+    }
+}
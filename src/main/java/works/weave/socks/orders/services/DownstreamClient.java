@@ -0,0 +1,16 @@
+package works.weave.socks.orders.services;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport used by {@link AsyncGetService}. {@code http.non-blocking} selects between the thread-per-call
+ * {@link BlockingDownstreamClient} and the event-loop based {@link NonBlockingDownstreamClient}.
+ */
+public interface DownstreamClient {
+    <T> CompletableFuture<ResponseEntity<T>> exchange(RequestEntity<?> request,
+                                                      ParameterizedTypeReference<T> responseType);
+}
@@ -0,0 +1,26 @@
+package works.weave.socks.orders.services;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CompletableFuture} stage does not pass its failure or cancellation back to the stage it was derived from.
+ * Each layer of the downstream call chain uses {@link #failUpstream} so a caller giving up, e.g. on a timeout,
+ * reaches the client and aborts the request instead of leaving it running.
+ */
+final class Futures {
+    private Futures() {
+    }
+
+    /**
+     * Fails {@code source} with the same cause once {@code derived} fails or is cancelled, and returns
+     * {@code derived}. A source that already completed is left alone.
+     */
+    static <T> CompletableFuture<T> failUpstream(CompletableFuture<T> derived, CompletableFuture<?> source) {
+        derived.whenComplete((result, e) -> {
+            if (e != null) {
+                source.completeExceptionally(e);
+            }
+        });
+        return derived;
+    }
+}
@@ -0,0 +1,131 @@
+package works.weave.socks.orders.services;
+
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The batching behind {@link OrderWriteBuffer}: a bounded queue drained by one collector thread into batches of at
+ * most {@code maxBatchSize} orders, each handed to the writer once its oldest order has waited {@code lingerMs}.
+ * Orders are rejected while the queue is full or the collector is stopped, and every accepted order is handed to
+ * the writer exactly once, including those still queued when it stops.
+ */
+class GroupCommit {
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Consumer<List<PendingWrite>> writer;
+    private final Object lock = new Object();
+    private Thread collector;
+    private volatile boolean running;
+
+    GroupCommit(int maxBatchSize, long lingerMs, int capacity, Consumer<List<PendingWrite>> writer) {
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = writer;
+    }
+
+    void start(String threadName) {
+        synchronized (lock) {
+            running = true;
+            collector = new Thread(this::collect, threadName);
+            collector.setDaemon(true);
+            collector.start();
+        }
+    }
+
+    /**
+     * Stops taking orders, waits for the collector to hand over its current batch and writes whatever is left.
+     */
+    void stop(long timeoutMs) throws InterruptedException {
+        synchronized (lock) {
+            running = false;
+        }
+        if (collector != null) {
+            collector.interrupt();
+            collector.join(timeoutMs);
+        }
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += maxBatchSize) {
+            writer.accept(new ArrayList<>(remaining.subList(from, Math.min(remaining.size(), from + maxBatchSize))));
+        }
+    }
+
+    CompletableFuture<CustomerOrder> submit(CustomerOrder order) {
+        PendingWrite write = new PendingWrite(order);
+        // Under the lock, so nothing is queued after stop() has drained the queue.
+        synchronized (lock) {
+            if (!running) {
+                write.future.completeExceptionally(new RejectedExecutionException("Order writer is not running"));
+            } else if (!queue.offer(write)) {
+                write.future.completeExceptionally(new RejectedExecutionException(
+                        "Order writer is saturated: " + queue.size() + " orders waiting"));
+            }
+        }
+        return write.future;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Completes every write of {@code batch} whose position is not in {@code failures} and fails the others.
+     */
+    static void complete(List<PendingWrite> batch, Map<Integer, String> failures) {
+        for (int i = 0; i < batch.size(); i++) {
+            String failure = failures.get(i);
+            if (failure == null) {
+                batch.get(i).future.complete(batch.get(i).order);
+            } else {
+                batch.get(i).future.completeExceptionally(
+                        new IllegalStateException("Unable to save order: " + failure));
+            }
+        }
+    }
+
+    private void collect() {
+        while (running) {
+            List<PendingWrite> batch = new ArrayList<>();
+            try {
+                PendingWrite first = queue.take();
+                batch.add(first);
+                long deadline = first.queued + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingWrite next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (!batch.isEmpty()) {
+                    writer.accept(batch);
+                }
+            }
+        }
+    }
+
+    static class PendingWrite {
+        final CustomerOrder order;
+        final CompletableFuture<CustomerOrder> future = new CompletableFuture<>();
+        final long queued = System.nanoTime();
+
+        PendingWrite(CustomerOrder order) {
+            this.order = order;
+        }
+    }
+}
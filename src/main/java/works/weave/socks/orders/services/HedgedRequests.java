@@ -0,0 +1,192 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.config.DownstreamExecutors;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent downstream GETs when {@code http.hedging.enabled=true}. If a dependency has not answered within
+ * the {@code http.hedging.percentile} of its recent latency, an identical second request is sent. The first response
+ * wins and the other request is cancelled. Each request earns {@code http.hedging.max-percent}/100 of a hedge, so
+ * hedges stay below that share of traffic however slow a dependency gets.
+ */
+@Component
+public class HedgedRequests {
+    static final Counter hedges = Counter.build()
+            .name("http_hedged_requests_total")
+            .help("Hedging decisions by dependency: sent, won (the hedge answered first) or over_budget.")
+            .labelNames("dependency", "result")
+            .register();
+
+    private static final double MAX_BURST = 10;
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Value("${http.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${http.hedging.percentile:95}")
+    private double percentile;
+
+    @Value("${http.hedging.max-percent:5}")
+    private double maxPercent;
+
+    @Value("${http.hedging.min-delay-ms:10}")
+    private long minDelayMs;
+
+    @Value("${http.hedging.min-samples:100}")
+    private int minSamples;
+
+    private final ConcurrentMap<String, Latencies> latencies = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "http-hedging");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Returns a client that hedges the requests it sends through {@code client}. Only wrap clients used for
+     * idempotent requests.
+     */
+    public DownstreamClient wrap(DownstreamClient client) {
+        return new DownstreamClient() {
+            @Override
+            public <T> CompletableFuture<ResponseEntity<T>> exchange(RequestEntity<?> request,
+                                                                     ParameterizedTypeReference<T> responseType) {
+                if (!enabled) {
+                    return client.exchange(request, responseType);
+                }
+                return hedged(request, responseType, client);
+            }
+        };
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> hedged(RequestEntity<?> request,
+                                                           ParameterizedTypeReference<T> responseType,
+                                                           DownstreamClient client) {
+        String dependency = DownstreamExecutors.dependencyOf(request.getUrl());
+        Latencies latency = latencies.computeIfAbsent(dependency, key -> new Latencies());
+        long start = System.nanoTime();
+        long delayNanos = latency.earn();
+
+        Attempts<T> attempts = new Attempts<>(dependency);
+        attempts.result.whenComplete((response, e) -> {
+            if (e == null) {
+                latency.record(System.nanoTime() - start);
+            }
+        });
+        attempts.launch(() -> client.exchange(request, responseType), false);
+        if (delayNanos >= 0 && !attempts.result.isDone()) {
+            ScheduledFuture<?> timer = scheduler.schedule(() -> {
+                if (attempts.result.isDone()) {
+                    return;
+                }
+                if (!latency.spend()) {
+                    hedges.labels(dependency, "over_budget").inc();
+                    return;
+                }
+                hedges.labels(dependency, "sent").inc();
+                LOG.debug("Hedging " + request.getUrl() + " after " + TimeUnit.NANOSECONDS.toMillis(delayNanos) + "ms");
+                attempts.launch(() -> client.exchange(request, responseType), true);
+            }, delayNanos, TimeUnit.NANOSECONDS);
+            attempts.result.whenComplete((response, e) -> timer.cancel(false));
+        }
+        return attempts.result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * The requests sent for one GET. The first success completes {@link #result} and cancels the rest; the result
+     * only fails once every request sent has failed, and a caller failing or cancelling it fails every request still
+     * open. Cancelling a losing request aborts it when its client supports that, so it stops holding a connection.
+     */
+    static class Attempts<T> {
+        private final String dependency;
+        final CompletableFuture<ResponseEntity<T>> result = new CompletableFuture<>();
+        private final CompletableFuture<?>[] sent = new CompletableFuture<?>[2];
+        private int launched;
+        private int failed;
+
+        Attempts(String dependency) {
+            this.dependency = dependency;
+        }
+
+        synchronized void launch(Supplier<CompletableFuture<ResponseEntity<T>>> call, boolean hedge) {
+            if (result.isDone()) {
+                return;
+            }
+            CompletableFuture<ResponseEntity<T>> attempt;
+            try {
+                attempt = call.get();
+            } catch (RuntimeException e) {
+                attempt = new CompletableFuture<>();
+                attempt.completeExceptionally(e);
+            }
+            sent[launched++] = attempt;
+            Futures.failUpstream(result, attempt);
+            attempt.whenComplete((response, e) -> completed(response, e, hedge));
+        }
+
+        private synchronized void completed(ResponseEntity<T> response, Throwable e, boolean hedge) {
+            if (e == null) {
+                if (result.complete(response)) {
+                    if (hedge) {
+                        hedges.labels(dependency, "won").inc();
+                    }
+                    Arrays.stream(sent, 0, launched).filter(attempt -> !attempt.isDone())
+                            .forEach(attempt -> attempt.cancel(true));
+                }
+            } else if (++failed == launched) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Recent latencies of one dependency plus its hedge budget.
+     */
+    private class Latencies {
+        private final LatencyWindow window = new LatencyWindow(minSamples);
+        private final TokenBudget budget = new TokenBudget(maxPercent, MAX_BURST);
+
+        /**
+         * Earns this request's share of the hedge budget and returns the hedge delay, or -1 while there are too
+         * few samples to pick one.
+         */
+        private long earn() {
+            budget.deposit();
+            long quantile = window.percentile(percentile);
+            return quantile < 0 ? -1 : Math.max(quantile, TimeUnit.MILLISECONDS.toNanos(minDelayMs));
+        }
+
+        private boolean spend() {
+            return budget.tryWithdraw();
+        }
+
+        private void record(long nanos) {
+            window.record(nanos);
+        }
+    }
+}
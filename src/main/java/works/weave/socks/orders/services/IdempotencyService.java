@@ -0,0 +1,318 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.IdempotencyRecord;
+import works.weave.socks.orders.resources.NewOrderResource;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Makes {@code POST /orders} safe to retry. The first request for an {@code Idempotency-Key} claims the key by
+ * inserting an {@link IdempotencyRecord}; duplicates arriving while it runs wait for it (in-process, or by polling
+ * Mongo if another instance owns it) and duplicates arriving afterwards get the saved order back without any
+ * downstream call. A key is bound to the body it was first sent with; reusing it for another order is rejected.
+ * <p>
+ * An attempt that fails before payment releases the key so the client can try again. Once payment has been
+ * authorised the key is kept: a failed attempt is recorded as {@code FAILED}, and a paid attempt whose outcome
+ * could not be recorded is never taken over, so a retry can not charge the customer a second time.
+ */
+@Service
+public class IdempotencyService {
+    static final Counter requests = Counter.build()
+            .name("idempotency_requests_total")
+            .help("Orders sent with an Idempotency-Key, by result: new, joined, replayed, conflict, mismatch or "
+                    + "failed.")
+            .labelNames("result")
+            .register();
+
+    /**
+     * What a request finds when its key has already been claimed.
+     */
+    enum Claim {
+        /** The key was released by an attempt that failed before payment. */
+        RELEASED,
+        /** The key was first used with a different request body. */
+        MISMATCH,
+        COMPLETED,
+        /** Payment was authorised but the order was not created, or its outcome was never recorded. */
+        FAILED,
+        /** Claimed by an attempt that died before payment. */
+        ABANDONED,
+        IN_PROGRESS
+    }
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${idempotency.wait-ms:30000}")
+    private long waitMs;
+
+    @Value("${idempotency.poll-ms:100}")
+    private long pollMs;
+
+    @Value("${idempotency.abandoned-after-ms:120000}")
+    private long abandonedAfterMs;
+
+    private final ConcurrentMap<String, CompletableFuture<CustomerOrder>> inFlight = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "idempotency-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void ensureTtlIndex() {
+        try {
+            mongoTemplate.indexOps(IdempotencyRecord.class)
+                    .ensureIndex(new Index().on("created", Sort.Direction.ASC).expire(ttlSeconds));
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to create TTL index on idempotency keys: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Identifies an order request by the resources it refers to.
+     */
+    public static String fingerprint(NewOrderResource item) {
+        String body = item.customer + "\n" + item.address + "\n" + item.card + "\n" + item.items;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Runs {@code checkout} once per key. The checkout must run the hook it is given once payment has been
+     * authorised and before it creates the order; the hook throws if that could not be recorded.
+     */
+    public CompletableFuture<CustomerOrder> execute(String key, String fingerprint,
+                                                    Function<Runnable, CompletableFuture<CustomerOrder>> checkout) {
+        try {
+            mongoTemplate.insert(new IdempotencyRecord(key, fingerprint, IdempotencyRecord.IN_PROGRESS));
+        } catch (DuplicateKeyException e) {
+            return existing(key, fingerprint, checkout, System.currentTimeMillis() + waitMs);
+        }
+        requests.labels("new").inc();
+        CompletableFuture<CustomerOrder> attempt = new CompletableFuture<>();
+        inFlight.put(key, attempt);
+        AtomicBoolean paid = new AtomicBoolean();
+        Runnable markPaid = () -> {
+            mongoTemplate.updateFirst(byKey(key), new Update().set("status", IdempotencyRecord.PAID),
+                    IdempotencyRecord.class);
+            paid.set(true);
+        };
+        CompletableFuture<CustomerOrder> placed;
+        try {
+            placed = checkout.apply(markPaid);
+        } catch (RuntimeException e) {
+            placed = new CompletableFuture<>();
+            placed.completeExceptionally(e);
+        }
+        placed.whenComplete((order, e) -> {
+            try {
+                if (e == null) {
+                    mongoTemplate.updateFirst(byKey(key), new Update()
+                            .set("status", IdempotencyRecord.COMPLETED)
+                            .set("orderId", order.getId()), IdempotencyRecord.class);
+                } else if (paid.get()) {
+                    mongoTemplate.updateFirst(byKey(key), new Update()
+                            .set("status", IdempotencyRecord.FAILED)
+                            .set("error", String.valueOf(CheckoutService.translate(e).getMessage())),
+                            IdempotencyRecord.class);
+                } else {
+                    mongoTemplate.remove(byKey(key), IdempotencyRecord.class);
+                }
+            } catch (RuntimeException mongoError) {
+                // A paid record stays PAID, which is never taken over.
+                LOG.warn("Unable to record outcome for idempotency key " + key, mongoError);
+            } finally {
+                inFlight.remove(key, attempt);
+                if (e != null) {
+                    attempt.completeExceptionally(e);
+                } else {
+                    attempt.complete(order);
+                }
+            }
+        });
+        return attempt.thenApply(Function.identity());
+    }
+
+    static Claim classify(IdempotencyRecord record, String fingerprint, long now, long abandonedAfterMs) {
+        if (record == null) {
+            return Claim.RELEASED;
+        }
+        if (record.getFingerprint() != null && !record.getFingerprint().equals(fingerprint)) {
+            return Claim.MISMATCH;
+        }
+        if (IdempotencyRecord.COMPLETED.equals(record.getStatus())) {
+            return Claim.COMPLETED;
+        }
+        boolean stale = now - record.getCreated().getTime() > abandonedAfterMs;
+        if (IdempotencyRecord.FAILED.equals(record.getStatus())
+                || (IdempotencyRecord.PAID.equals(record.getStatus()) && stale)) {
+            return Claim.FAILED;
+        }
+        if (IdempotencyRecord.IN_PROGRESS.equals(record.getStatus()) && stale) {
+            return Claim.ABANDONED;
+        }
+        return Claim.IN_PROGRESS;
+    }
+
+    /**
+     * The order a completed key was used for. It may have been deleted since, and records written while the
+     * outcome update failed half way may lack the order id.
+     */
+    static CustomerOrder replay(IdempotencyRecord record, Function<String, CustomerOrder> findOrder) {
+        CustomerOrder order = record.getOrderId() != null ? findOrder.apply(record.getOrderId()) : null;
+        if (order == null) {
+            throw new OrderNotFoundException("The order created with this Idempotency-Key no longer exists.");
+        }
+        return order;
+    }
+
+    private CompletableFuture<CustomerOrder> existing(String key, String fingerprint,
+                                                      Function<Runnable, CompletableFuture<CustomerOrder>> checkout,
+                                                      long deadline) {
+        IdempotencyRecord record = mongoTemplate.findById(key, IdempotencyRecord.class);
+        switch (classify(record, fingerprint, System.currentTimeMillis(), abandonedAfterMs)) {
+            case RELEASED:
+                return execute(key, fingerprint, checkout);
+            case MISMATCH:
+                requests.labels("mismatch").inc();
+                return failed(new IdempotencyKeyReusedException(
+                        "This Idempotency-Key was already used for a different order."));
+            case COMPLETED:
+                requests.labels("replayed").inc();
+                try {
+                    return CompletableFuture.completedFuture(
+                            replay(record, id -> mongoTemplate.findById(id, CustomerOrder.class)));
+                } catch (RuntimeException e) {
+                    return failed(e);
+                }
+            case FAILED:
+                requests.labels("failed").inc();
+                return failed(new AttemptFailedException("An order with this Idempotency-Key failed after payment "
+                        + "was authorised" + (record.getError() != null ? ": " + record.getError() : "")
+                        + ". Check your orders before retrying with a new key."));
+            case ABANDONED:
+                if (inFlight.containsKey(key)) {
+                    // Only slow: the attempt is still running in this instance.
+                    break;
+                }
+                // The owner died before payment; take the key over unless someone else already did.
+                LOG.warn("Taking over abandoned idempotency key: " + record);
+                mongoTemplate.remove(new Query(where("_id").is(key)
+                        .and("status").is(IdempotencyRecord.IN_PROGRESS)
+                        .and("created").is(record.getCreated())), IdempotencyRecord.class);
+                return execute(key, fingerprint, checkout);
+            default:
+                break;
+        }
+        CompletableFuture<CustomerOrder> local = inFlight.get(key);
+        if (local != null) {
+            requests.labels("joined").inc();
+            return local.thenApply(Function.identity());
+        }
+        if (System.currentTimeMillis() >= deadline) {
+            requests.labels("conflict").inc();
+            return failed(new RequestInProgressException(
+                    "An order with this Idempotency-Key is still being processed."));
+        }
+        // Owned by another instance: check again shortly without holding a thread.
+        CompletableFuture<CustomerOrder> later = new CompletableFuture<>();
+        poller.schedule(() -> {
+            try {
+                existing(key, fingerprint, checkout, deadline).whenComplete((order, e) -> {
+                    if (e != null) {
+                        later.completeExceptionally(e);
+                    } else {
+                        later.complete(order);
+                    }
+                });
+            } catch (RuntimeException e) {
+                later.completeExceptionally(e);
+            }
+        }, pollMs, TimeUnit.MILLISECONDS);
+        return later;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static Query byKey(String key) {
+        return new Query(where("_id").is(key));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    @ResponseStatus(value = HttpStatus.CONFLICT)
+    public static class RequestInProgressException extends IllegalStateException {
+        public RequestInProgressException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.CONFLICT)
+    public static class AttemptFailedException extends IllegalStateException {
+        public AttemptFailedException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY)
+    public static class IdempotencyKeyReusedException extends IllegalStateException {
+        public IdempotencyKeyReusedException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.NOT_FOUND)
+    public static class OrderNotFoundException extends IllegalStateException {
+        public OrderNotFoundException(String s) {
+            super(s);
+        }
+    }
+}
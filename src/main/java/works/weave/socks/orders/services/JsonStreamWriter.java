@@ -0,0 +1,49 @@
+package works.weave.socks.orders.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Writes documents to a stream one at a time, either as a JSON array or as newline delimited JSON, so only the
+ * current document is ever held in memory. The output is flushed after the first document to get the first bytes
+ * out early; after that the container's buffer decides.
+ */
+public class JsonStreamWriter {
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private final ObjectMapper objectMapper;
+
+    public JsonStreamWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the number of documents written.
+     */
+    public long write(Iterator<?> documents, OutputStream out, boolean ndjson) throws IOException {
+        long written = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+        while (documents.hasNext()) {
+            generator.writeObject(documents.next());
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+            if (++written == 1) {
+                generator.flush();
+            }
+        }
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+        return written;
+    }
+}
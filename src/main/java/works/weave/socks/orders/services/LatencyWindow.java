@@ -0,0 +1,46 @@
+package works.weave.socks.orders.services;
+
+import java.util.Arrays;
+
+/**
+ * The most recent latencies of one dependency. Percentiles are read from a sorted copy of the window that is only
+ * refreshed every {@link #RECOMPUTE_EVERY} samples, so reading one on every request stays cheap.
+ */
+class LatencyWindow {
+    private static final int SIZE = 1000;
+
+    private static final int RECOMPUTE_EVERY = 50;
+
+    private final long[] window = new long[SIZE];
+    private final int minSamples;
+    private int next;
+    private int samples;
+    private int sinceSort;
+    private long[] sorted;
+
+    LatencyWindow(int minSamples) {
+        this.minSamples = Math.min(minSamples, SIZE);
+    }
+
+    synchronized void record(long nanos) {
+        window[next] = nanos;
+        next = (next + 1) % SIZE;
+        samples = Math.min(samples + 1, SIZE);
+        if (samples >= minSamples && (sorted == null || ++sinceSort >= RECOMPUTE_EVERY)) {
+            sinceSort = 0;
+            sorted = Arrays.copyOf(window, samples);
+            Arrays.sort(sorted);
+        }
+    }
+
+    /**
+     * Returns the given percentile in nanoseconds, or -1 while fewer than {@code minSamples} latencies have been
+     * recorded.
+     */
+    synchronized long percentile(double percentile) {
+        if (sorted == null) {
+            return -1;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * percentile / 100))];
+    }
+}
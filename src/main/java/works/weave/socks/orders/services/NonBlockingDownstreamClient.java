@@ -0,0 +1,173 @@
+package works.weave.socks.orders.services;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import works.weave.socks.orders.config.DownstreamExecutors;
+import works.weave.socks.orders.config.RestProxyTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Performs downstream calls on Apache HttpAsyncClient's NIO reactor, so a few I/O dispatcher threads serve every
+ * in-flight request. Responses are decoded with the same message converters (including HAL) as the blocking
+ * {@link RestProxyTemplate}, and the {@link Deadline#HEADER} budget is honoured as in
+ * {@link BlockingDownstreamClient}.
+ */
+@Component
+@ConditionalOnProperty(name = "http.non-blocking", havingValue = "true")
+public class NonBlockingDownstreamClient implements DownstreamClient {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    // Socket timeout of the request being created on this thread, read by the request factory.
+    private static final ThreadLocal<Long> SOCKET_TIMEOUT_MS = new ThreadLocal<>();
+
+    private final RestProxyTemplate restProxyTemplate;
+
+    private final DownstreamExecutors executors;
+
+    @Value("${http.io-threads:0}")
+    private int ioThreads;
+
+    @Value("${http.pool.max-total:200}")
+    private int maxTotal;
+
+    @Value("${http.pool.max-per-route:50}")
+    private int maxPerRoute;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    private AsyncRestTemplate asyncRestTemplate;
+
+    @Autowired
+    public NonBlockingDownstreamClient(RestProxyTemplate restProxyTemplate, DownstreamExecutors executors) {
+        this.restProxyTemplate = restProxyTemplate;
+        this.executors = executors;
+    }
+
+    @PostConstruct
+    public void init() throws IOReactorException {
+        int threads = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(threads)
+                .setConnectTimeout(restProxyTemplate.getRequestConfig().getConnectTimeout())
+                .setSoTimeout(restProxyTemplate.getRequestConfig().getSocketTimeout())
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager =
+                new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig));
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(restProxyTemplate.getRequestConfig())
+                .setKeepAliveStrategy(restProxyTemplate.keepAliveStrategy());
+        if (restProxyTemplate.getProxy() != null) {
+            builder.setProxy(restProxyTemplate.getProxy());
+        }
+        httpClient = builder.build();
+        httpClient.start();
+        LOG.info("Started non-blocking HTTP client with " + threads + " I/O threads");
+
+        asyncRestTemplate = new AsyncRestTemplate(new DeadlineRequestFactory(httpClient,
+                restProxyTemplate.getRequestConfig()));
+        asyncRestTemplate.setMessageConverters(restProxyTemplate.getRestTemplate().getMessageConverters());
+    }
+
+    /**
+     * Sends the request unless its {@link Deadline#HEADER} budget has already run out, with its socket timeout capped
+     * at that budget. The returned future is completed on the pool of the dependency behind the request URI, never on
+     * an I/O dispatcher thread, so follow-on stages cannot stall the reactor.
+     */
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> exchange(RequestEntity<?> request,
+                                                             ParameterizedTypeReference<T> responseType) {
+        CompletableFuture<ResponseEntity<T>> future = new CompletableFuture<>();
+        String budget = request.getHeaders().getFirst(Deadline.HEADER);
+        long timeoutMs = budget == null ? 0 : Long.parseLong(budget);
+        if (budget != null && timeoutMs <= 0) {
+            future.completeExceptionally(new TimeoutException("Deadline passed before calling " + request.getUrl()));
+            return future;
+        }
+        Executor callbacks = executors.forUri(request.getUrl());
+        ListenableFuture<ResponseEntity<T>> response;
+        SOCKET_TIMEOUT_MS.set(timeoutMs);
+        try {
+            response = asyncRestTemplate.exchange(request.getUrl(), request.getMethod(), request, responseType);
+        } finally {
+            SOCKET_TIMEOUT_MS.remove();
+        }
+        response.addCallback(result -> completeOn(callbacks, () -> future.complete(result)),
+                e -> completeOn(callbacks, () -> future.completeExceptionally(e)));
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                response.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private void completeOn(Executor executor, Runnable completion) {
+        try {
+            executor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            // Completing on the dispatcher beats never completing at all.
+            LOG.debug("Completing a downstream call on the I/O dispatcher: " + e.getMessage());
+            completion.run();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Caps the socket timeout of the request being created on this thread at its deadline budget.
+     */
+    private static class DeadlineRequestFactory extends HttpComponentsAsyncClientHttpRequestFactory {
+        private final RequestConfig requestConfig;
+
+        private DeadlineRequestFactory(CloseableHttpAsyncClient httpClient, RequestConfig requestConfig) {
+            super(httpClient);
+            this.requestConfig = requestConfig;
+        }
+
+        @Override
+        protected void postProcessHttpRequest(HttpUriRequest request) {
+            Long timeoutMs = SOCKET_TIMEOUT_MS.get();
+            if (timeoutMs != null && timeoutMs > 0 && timeoutMs < requestConfig.getSocketTimeout()
+                    && request instanceof HttpRequestBase) {
+                ((HttpRequestBase) request).setConfig(RequestConfig.copy(requestConfig)
+                        .setSocketTimeout(timeoutMs.intValue())
+                        .build());
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package works.weave.socks.orders.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Exports all orders placed in a date range as newline delimited JSON, oldest first. The range is cut into chunks
+ * of at most {@code orders.export.chunk-hours}; up to {@code orders.export.parallelism} of them are read ahead by
+ * their own Mongo cursor and serialised on their own thread, while the caller writes the chunks out in order.
+ * Every chunk buffers at most {@code orders.export.buffer-size} orders, and at most
+ * {@code orders.export.max-concurrent} exports run at once, so memory stays bounded however large the range is.
+ */
+@Service
+public class OrderExportService {
+    static final Counter exports = Counter.build()
+            .name("order_exports_total")
+            .help("Order exports by result: ok, failed or rejected.")
+            .labelNames("result")
+            .register();
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${orders.export.parallelism:4}")
+    private int parallelism;
+
+    @Value("${orders.export.chunk-hours:24}")
+    private long chunkHours;
+
+    @Value("${orders.export.buffer-size:1000}")
+    private int bufferSize;
+
+    @Value("${orders.export.max-concurrent:2}")
+    private int maxConcurrent;
+
+    private Semaphore permits;
+
+    private ChunkedExport chunks;
+
+    private final ExecutorService readers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "order-export-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+        ObjectWriter writer = objectMapper.writerFor(CustomerOrder.class);
+        chunks = new ChunkedExport(readers, parallelism, TimeUnit.HOURS.toMillis(chunkHours), bufferSize,
+                (from, to, sink) -> read(from, to, writer, sink));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * Reserves one of the {@code orders.export.max-concurrent} exports for the orders with {@code from <= date < to}.
+     * Nothing is read until {@link Export#writeTo}; closing the export gives the reservation back.
+     */
+    public Export start(Date from, Date to) {
+        if (from == null || to == null || !from.before(to)) {
+            throw new InvalidExportRequestException("from must be before to");
+        }
+        if (!permits.tryAcquire()) {
+            exports.labels("rejected").inc();
+            throw new ExportBusyException("Already running " + maxConcurrent + " exports");
+        }
+        return new Export(from, to);
+    }
+
+    public class Export implements Closeable {
+        private final Date from;
+        private final Date to;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Export(Date from, Date to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Writes the orders to {@code out} and returns how many were written. Once output has started a failure can
+         * only be reported by throwing, so callers must treat a partial stream as failed.
+         */
+        public long writeTo(OutputStream out) throws IOException {
+            try {
+                long written = chunks.writeTo(from, to, out);
+                out.flush();
+                exports.labels("ok").inc();
+                LOG.debug("Exported " + written + " orders from " + from + " to " + to);
+                return written;
+            } catch (IOException | RuntimeException e) {
+                exports.labels("failed").inc();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private void read(Date from, Date to, ObjectWriter writer, Predicate<byte[]> sink) throws IOException {
+        Query query = new Query(where("date").gte(from).lt(to)).with(new Sort(
+                new Sort.Order(Sort.Direction.ASC, "date"), new Sort.Order(Sort.Direction.ASC, "id")));
+        try (CloseableIterator<CustomerOrder> orders = mongoTemplate.stream(query, CustomerOrder.class)) {
+            while (orders.hasNext()) {
+                if (!sink.test(writer.writeValueAsBytes(orders.next()))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public static class InvalidExportRequestException extends IllegalStateException {
+        public InvalidExportRequestException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    public static class ExportBusyException extends IllegalStateException {
+        public ExportBusyException(String s) {
+            super(s);
+        }
+    }
+}
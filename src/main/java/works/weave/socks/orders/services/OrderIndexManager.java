@@ -0,0 +1,259 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import io.prometheus.client.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.config.DownstreamExecutors;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The indexes the order query paths rely on, declared in one place. At startup they are built in the background
+ * unless {@code mongo.indexes.create-on-startup=false}, and a report compares them with what the collection
+ * actually has: declared indexes that are missing, indexes nobody declared and indexes that have not been used
+ * since the server started. The same state is exported as metrics and refreshed every
+ * {@code mongo.indexes.stats-refresh-ms}. Not created in {@code --export} mode.
+ */
+@Service
+@ConditionalOnProperty(name = "export", havingValue = "false", matchIfMissing = true)
+public class OrderIndexManager {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DownstreamExecutors executors;
+
+    @Value("${mongo.indexes.create-on-startup:true}")
+    private boolean createOnStartup;
+
+    @Value("${mongo.indexes.background:true}")
+    private boolean background;
+
+    private final List<Index> declared = new ArrayList<>();
+
+    private volatile Map<String, Boolean> present = Collections.emptyMap();
+
+    // Null while usage is unknown: $indexStats needs MongoDB 3.2 and the indexStats privilege.
+    private volatile Map<String, Long> accesses;
+
+    @PostConstruct
+    public void init() {
+        // Keyset pagination and the per-customer lookups, newest first. The (customerId, date desc) prefix serves
+        // findByCustomerId and the streaming search.
+        declare(new Index()
+                .on("customerId", Sort.Direction.ASC)
+                .on("date", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("customerId_date_id"));
+        // Covers the per-customer statistics: count, latest date and summed totals without loading orders.
+        declare(new Index()
+                .on("customerId", Sort.Direction.ASC)
+                .on("date", Sort.Direction.DESC)
+                .on("total", Sort.Direction.ASC)
+                .named("customerId_date_total"));
+        // Date range exports, read oldest first by several cursors at once.
+        declare(new Index()
+                .on("date", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC)
+                .named("date_id"));
+        new IndexCollector().register();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            CompletableFuture.runAsync(() -> {
+                if (createOnStartup) {
+                    ensureIndexes();
+                }
+                report();
+            }, executors.forDependency("orders-db"));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Unable to check order indexes at startup: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${mongo.indexes.stats-refresh-ms:300000}",
+            fixedDelayString = "${mongo.indexes.stats-refresh-ms:300000}")
+    public void refresh() {
+        try {
+            refreshState(collection());
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to refresh order index statistics: " + e.getMessage());
+        }
+    }
+
+    private void declare(Index index) {
+        declared.add(background ? index.background() : index);
+    }
+
+    private void ensureIndexes() {
+        for (Index index : declared) {
+            String name = index.getIndexOptions().get("name").toString();
+            try {
+                long start = System.currentTimeMillis();
+                mongoTemplate.indexOps(CustomerOrder.class).ensureIndex(index);
+                LOG.info("Index " + name + " ready after " + (System.currentTimeMillis() - start) + "ms");
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to create index " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void report() {
+        DBCollection collection = collection();
+        try {
+            refreshState(collection);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to read indexes of " + collection.getName() + ": " + e.getMessage());
+            return;
+        }
+        Map<String, DBObject> actual = new HashMap<>();
+        collection.getIndexInfo().forEach(info -> actual.put(info.get("name").toString(), info));
+        StringBuilder report = new StringBuilder("Index report for " + collection.getName() + ":");
+        for (Index index : declared) {
+            String name = index.getIndexOptions().get("name").toString();
+            report.append("\n  ").append(name).append(' ').append(index.getIndexKeys())
+                    .append(present.get(name) ? " present" : " MISSING");
+        }
+        Map<String, Long> usage = accesses;
+        actual.forEach((name, info) -> {
+            boolean isDeclared = present.containsKey(name);
+            if (!isDeclared && !"_id_".equals(name)) {
+                report.append("\n  ").append(name).append(' ').append(info.get("key")).append(" not declared");
+            }
+            Long ops = usage == null ? null : usage.get(name);
+            if (ops != null && ops == 0 && !"_id_".equals(name)) {
+                report.append("\n  ").append(name).append(" unused since server start");
+            }
+        });
+        if (usage == null) {
+            report.append("\n  index usage unknown: $indexStats needs MongoDB 3.2 and the indexStats privilege");
+        }
+        if (present.containsValue(false)) {
+            LOG.warn(report.toString());
+        } else {
+            LOG.info(report.toString());
+        }
+    }
+
+    private void refreshState(DBCollection collection) {
+        Map<String, Boolean> nextPresent = new LinkedHashMap<>();
+        List<DBObject> indexes = collection.getIndexInfo();
+        for (Index index : declared) {
+            DBObject keys = index.getIndexKeys();
+            nextPresent.put(index.getIndexOptions().get("name").toString(),
+                    indexes.stream().anyMatch(info -> sameKeys(keys, (DBObject) info.get("key"))));
+        }
+        present = nextPresent;
+        accesses = indexStats(collection);
+    }
+
+    private Map<String, Long> indexStats(DBCollection collection) {
+        Map<String, Long> nextAccesses = new HashMap<>();
+        try {
+            Cursor stats = collection.aggregate(
+                    Collections.<DBObject>singletonList(new BasicDBObject("$indexStats", new BasicDBObject())),
+                    AggregationOptions.builder().outputMode(AggregationOptions.OutputMode.CURSOR).build());
+            try {
+                // One document per index and shard; add the shards up.
+                stats.forEachRemaining(stat -> {
+                    Object ops = ((DBObject) stat.get("accesses")).get("ops");
+                    nextAccesses.merge(stat.get("name").toString(), ((Number) ops).longValue(), Long::sum);
+                });
+            } finally {
+                stats.close();
+            }
+        } catch (MongoException e) {
+            // Reported as unknown; a server that rejects it will keep doing so, so do not warn on every refresh.
+            LOG.debug("$indexStats failed on " + collection.getName() + ": " + e.getMessage());
+            return null;
+        }
+        return nextAccesses;
+    }
+
+    /**
+     * Whether an index has the declared keys. The server may return a direction as 1.0 or a long rather than the
+     * int that was declared, so numeric directions are compared by sign; other values, such as {@code "hashed"},
+     * must be equal.
+     */
+    static boolean sameKeys(DBObject declared, DBObject actual) {
+        if (actual == null || !new ArrayList<>(declared.keySet()).equals(new ArrayList<>(actual.keySet()))) {
+            return false;
+        }
+        for (String field : declared.keySet()) {
+            Object expected = declared.get(field);
+            Object value = actual.get(field);
+            if (expected instanceof Number && value instanceof Number) {
+                if (Math.signum(((Number) expected).doubleValue()) != Math.signum(((Number) value).doubleValue())) {
+                    return false;
+                }
+            } else if (!expected.equals(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private DBCollection collection() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(CustomerOrder.class));
+    }
+
+    private class IndexCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<String> labelNames = Arrays.asList("collection", "index");
+            String collection = mongoTemplate.getCollectionName(CustomerOrder.class);
+            List<MetricFamilySamples.Sample> missing = new ArrayList<>();
+            present.forEach((name, isPresent) -> missing.add(new MetricFamilySamples.Sample("mongo_index_missing",
+                    labelNames, Arrays.asList(collection, name), isPresent ? 0 : 1)));
+            List<MetricFamilySamples.Sample> ops = new ArrayList<>();
+            List<MetricFamilySamples.Sample> unused = new ArrayList<>();
+            Map<String, Long> usage = accesses;
+            if (usage == null) {
+                usage = Collections.emptyMap();
+            }
+            usage.forEach((name, count) -> {
+                ops.add(new MetricFamilySamples.Sample("mongo_index_accesses", labelNames,
+                        Arrays.asList(collection, name), count));
+                unused.add(new MetricFamilySamples.Sample("mongo_index_unused", labelNames,
+                        Arrays.asList(collection, name), count == 0 ? 1 : 0));
+            });
+            return Arrays.asList(
+                    new MetricFamilySamples("mongo_index_missing", Type.GAUGE,
+                            "1 if a declared index is missing from the collection.", missing),
+                    new MetricFamilySamples("mongo_index_accesses", Type.GAUGE,
+                            "Operations that used the index since the server started, from $indexStats.", ops),
+                    new MetricFamilySamples("mongo_index_unused", Type.GAUGE,
+                            "1 if the index has not been used since the server started.", unused));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package works.weave.socks.orders.services;
+
+import works.weave.socks.orders.services.OrderSearchService.InvalidPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Sort key of an order, {@code (customerId, date, id)}, encoded as an opaque URL safe continuation token.
+ */
+class OrderKey {
+    final String customerId;
+    final Date date;
+    final String id;
+
+    OrderKey(String customerId, Date date, String id) {
+        this.customerId = customerId;
+        this.date = date;
+        this.id = id;
+    }
+
+    String encode() {
+        String key = date.getTime() + ":" + id + ":" + customerId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token issued by {@link #encode}. When {@code customerId} is not null the token must belong to that
+     * customer, so it cannot be used to page through someone else's orders.
+     */
+    static OrderKey decode(String token, String customerId) {
+        OrderKey key;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split(":", 3);
+            key = new OrderKey(parts[2], new Date(Long.parseLong(parts[0])), parts[1]);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidPageRequestException("Invalid continuation token");
+        }
+        if (customerId != null && !customerId.equals(key.customerId)) {
+            throw new InvalidPageRequestException("Continuation token belongs to another customer");
+        }
+        return key;
+    }
+}
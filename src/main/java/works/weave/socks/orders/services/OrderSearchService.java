@@ -0,0 +1,161 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.resources.CustomerOrderStats;
+import works.weave.socks.orders.resources.OrderPage;
+import works.weave.socks.orders.resources.OrderSummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Order lookups that do not fit the Spring Data REST repository endpoints.
+ */
+@Service
+public class OrderSearchService {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    static final String STATS_INDEX = "customerId_date_total";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Opens a cursor over a customer's orders. Documents are read from Mongo in batches as the iterator advances;
+     * the caller must close it.
+     */
+    public CloseableIterator<CustomerOrder> streamByCustomerId(String customerId) {
+        return mongoTemplate.stream(new Query(where("customerId").is(customerId)), CustomerOrder.class);
+    }
+
+    /**
+     * Returns one page of orders ordered by {@code (customerId, date desc, id desc)}, optionally restricted to one
+     * customer. Pages continue from the key of the previous page's last order, so every page is read with bounded
+     * range scans of the {@code customerId_date_id} index however deep it is. The total is only counted on request.
+     */
+    public OrderPage<CustomerOrder> page(String customerId, String continuation, int size, boolean count) {
+        return page(customerId, continuation, size, count, new String[0], Function.identity());
+    }
+
+    /**
+     * Like {@link #page}, but reads only the {@link OrderSummary#FIELDS} of each order from Mongo.
+     */
+    public OrderPage<OrderSummary> summaries(String customerId, String continuation, int size, boolean count) {
+        return page(customerId, continuation, size, count, OrderSummary.FIELDS, OrderSummary::of);
+    }
+
+    private <T> OrderPage<T> page(String customerId, String continuation, int size, boolean count, String[] fields,
+                                  Function<CustomerOrder, T> view) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidPageRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Query> ranges = continuation == null ? Collections.singletonList(byCustomer(customerId))
+                : after(OrderKey.decode(continuation, customerId), customerId == null);
+        // One extra order tells whether there is a next page without a count.
+        List<CustomerOrder> orders = new ArrayList<>();
+        for (Query query : ranges) {
+            for (String field : fields) {
+                query.fields().include(field);
+            }
+            query.with(new Sort(new Sort.Order(Sort.Direction.ASC, "customerId"),
+                    new Sort.Order(Sort.Direction.DESC, "date"),
+                    new Sort.Order(Sort.Direction.DESC, "id")));
+            query.limit(size + 1 - orders.size());
+            orders.addAll(mongoTemplate.find(query, CustomerOrder.class));
+            if (orders.size() > size) {
+                break;
+            }
+        }
+
+        String next = null;
+        if (orders.size() > size) {
+            orders = orders.subList(0, size);
+            CustomerOrder last = orders.get(size - 1);
+            next = new OrderKey(last.getCustomerId(), last.getDate(), last.getId()).encode();
+        }
+        Long total = count ? mongoTemplate.count(byCustomer(customerId), CustomerOrder.class) : null;
+        return new OrderPage<>(orders.stream().map(view).collect(Collectors.toList()), next, total);
+    }
+
+    /**
+     * Counts a customer's orders, their latest date and their summed totals in one aggregation. It only touches
+     * {@code customerId}, {@code date} and {@code total}, so it is answered from the {@code customerId_date_total}
+     * index without loading any order.
+     */
+    public CustomerOrderStats stats(String customerId) {
+        CommandResult result = mongoTemplate.executeCommand(
+                statsCommand(mongoTemplate.getCollectionName(CustomerOrder.class), customerId));
+        List<?> batch = (List<?>) ((DBObject) result.get("cursor")).get("firstBatch");
+        DBObject stats = batch.isEmpty() ? null : (DBObject) batch.get(0);
+        if (stats == null) {
+            return new CustomerOrderStats(customerId, 0, null, 0);
+        }
+        return new CustomerOrderStats(customerId,
+                ((Number) stats.get("orderCount")).longValue(),
+                (Date) stats.get("lastOrderDate"),
+                ((Number) stats.get("lifetimeSpend")).doubleValue());
+    }
+
+    /**
+     * The stats aggregation as a raw command: neither Spring Data's aggregation options nor the driver's take an
+     * index hint. The hint pins the {@code customerId_date_total} index, and with {@code _id} projected away the
+     * plan stays covered, i.e. examines no documents.
+     */
+    static DBObject statsCommand(String collection, String customerId) {
+        List<DBObject> pipeline = Arrays.<DBObject>asList(
+                new BasicDBObject("$match", new BasicDBObject("customerId", customerId)),
+                new BasicDBObject("$project", new BasicDBObject("date", 1).append("total", 1).append("_id", 0)),
+                new BasicDBObject("$group", new BasicDBObject("_id", null)
+                        .append("orderCount", new BasicDBObject("$sum", 1))
+                        .append("lastOrderDate", new BasicDBObject("$max", "$date"))
+                        .append("lifetimeSpend", new BasicDBObject("$sum", "$total"))));
+        return new BasicDBObject("aggregate", collection)
+                .append("pipeline", pipeline)
+                .append("cursor", new BasicDBObject())
+                .append("hint", STATS_INDEX);
+    }
+
+    private static Query byCustomer(String customerId) {
+        return customerId == null ? new Query() : new Query(where("customerId").is(customerId));
+    }
+
+    /**
+     * The orders sorting after {@code key}, as consecutive ranges in sort order. Each one is a single bounded range of
+     * {@code customerId_date_id}; one {@code $or} over all of them would be planned as several index scans merged
+     * under the sort.
+     */
+    private static List<Query> after(OrderKey key, boolean acrossCustomers) {
+        List<Query> ranges = new ArrayList<>();
+        ranges.add(new Query(where("customerId").is(key.customerId).and("date").is(key.date).and("id").lt(key.id)));
+        ranges.add(new Query(where("customerId").is(key.customerId).and("date").lt(key.date)));
+        if (acrossCustomers) {
+            ranges.add(new Query(where("customerId").gt(key.customerId)));
+        }
+        return ranges;
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public static class InvalidPageRequestException extends IllegalStateException {
+        public InvalidPageRequestException(String s) {
+            super(s);
+        }
+    }
+}
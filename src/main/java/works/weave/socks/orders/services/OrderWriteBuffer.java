@@ -0,0 +1,150 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.config.DownstreamExecutors;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.services.GroupCommit.PendingWrite;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for new orders when {@code orders.group-commit.enabled=true}. Orders saved by concurrent checkouts
+ * are collected for up to {@code orders.group-commit.linger-ms} or {@code orders.group-commit.max-batch-size}
+ * orders, whichever comes first, and written with one unordered bulk insert on the orders-db executor. Each caller
+ * is completed once its own order has been acknowledged, so one bad order does not fail the rest of its batch. At
+ * most {@code orders.group-commit.queue-capacity} orders wait for a batch; beyond that checkouts get a 503.
+ */
+@Service
+public class OrderWriteBuffer {
+    static final Histogram batchSize = Histogram.build()
+            .name("order_group_commit_batch_size")
+            .help("Orders written per group commit.")
+            .buckets(1, 2, 4, 8, 16, 32, 64, 128, 256)
+            .register();
+
+    static final Histogram linger = Histogram.build()
+            .name("order_group_commit_linger_seconds")
+            .help("Time the oldest order of a group commit waited before its batch was written.")
+            .buckets(.0005, .001, .0025, .005, .01, .025, .05, .1)
+            .register();
+
+    static final Counter failures = Counter.build()
+            .name("order_group_commit_failures_total")
+            .help("Orders not acknowledged by a group commit, by reason: write_error, write_concern, rejected, error.")
+            .labelNames("reason")
+            .register();
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DownstreamExecutors executors;
+
+    @Value("${orders.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${orders.group-commit.max-batch-size:64}")
+    private int maxBatchSize;
+
+    @Value("${orders.group-commit.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${orders.group-commit.queue-capacity:1024}")
+    private int queueCapacity;
+
+    private GroupCommit groupCommit;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        LOG.info("Group commit enabled: max-batch-size=" + maxBatchSize + ", linger=" + lingerMs + "ms, queue="
+                + queueCapacity);
+        groupCommit = new GroupCommit(maxBatchSize, lingerMs, queueCapacity, this::flush);
+        groupCommit.start("order-group-commit");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (groupCommit != null) {
+            groupCommit.stop(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Queues {@code order} for the next group commit, or fails with a {@link RejectedExecutionException} once
+     * {@code orders.group-commit.queue-capacity} orders are waiting. Orders without an id are given one up front,
+     * as the bulk insert does not write generated ids back to the entity.
+     */
+    public CompletableFuture<CustomerOrder> save(CustomerOrder order) {
+        if (order.getId() == null) {
+            order.setId(new ObjectId().toHexString());
+        }
+        if (groupCommit == null) {
+            CompletableFuture<CustomerOrder> future = new CompletableFuture<>();
+            future.completeExceptionally(new RejectedExecutionException("Order writer is not running"));
+            return future;
+        }
+        CompletableFuture<CustomerOrder> future = groupCommit.submit(order);
+        if (future.isCompletedExceptionally()) {
+            failures.labels("rejected").inc();
+        }
+        return future;
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        linger.observe((System.nanoTime() - batch.get(0).queued) / 1e9);
+        try {
+            executors.forDependency("orders-db").execute(() -> write(batch));
+        } catch (RejectedExecutionException e) {
+            failures.labels("rejected").inc(batch.size());
+            batch.forEach(write -> write.future.completeExceptionally(e));
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        batchSize.observe(batch.size());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerOrder.class);
+        batch.forEach(write -> bulk.insert(write.order));
+        try {
+            bulk.execute();
+            GroupCommit.complete(batch, Collections.emptyMap());
+            LOG.debug("Group commit of " + batch.size() + " orders");
+        } catch (BulkOperationException e) {
+            // Inserted with a write concern error means not to the requested durability: every order fails.
+            boolean writeConcern = BulkInserts.isWriteConcernError(e);
+            Map<Integer, String> errors = BulkInserts.failures(e, batch.size());
+            LOG.warn("Group commit failed for " + errors.size() + " of " + batch.size() + " orders: " + e.getMessage());
+            failures.labels(writeConcern ? "write_concern" : "write_error").inc(errors.size());
+            GroupCommit.complete(batch, errors);
+        } catch (RuntimeException e) {
+            LOG.warn("Group commit of " + batch.size() + " orders failed", e);
+            failures.labels("error").inc(batch.size());
+            batch.forEach(write -> write.future.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package works.weave.socks.orders.services;
+
+import works.weave.socks.orders.entities.PendingShipment;
+
+import java.util.Date;
+
+/**
+ * When {@link ShipmentOutbox} entries are due. A leased entry is hidden until its lease ends, so it comes back if
+ * its dispatcher dies; a failed one comes back after an exponential backoff, and one that failed
+ * {@code maxAttempts} times never does.
+ */
+class OutboxSchedule {
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final long maxBackoffMs;
+    private final long orphanGraceMs;
+
+    OutboxSchedule(long leaseMs, int maxAttempts, long retryBackoffMs, long maxBackoffMs, long orphanGraceMs) {
+        this.leaseMs = leaseMs;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.orphanGraceMs = orphanGraceMs;
+    }
+
+    Date leasedUntil(long now) {
+        return new Date(now + leaseMs);
+    }
+
+    /**
+     * Returns when to try again after the {@code attempts}th failure, or null to give up.
+     */
+    Date nextAttempt(int attempts, long now) {
+        if (attempts >= maxAttempts) {
+            return null;
+        }
+        return new Date(now + Math.min(maxBackoffMs, retryBackoffMs << Math.min(attempts - 1, 20)));
+    }
+
+    /**
+     * An entry whose order is still missing after the grace period belongs to a checkout that failed to save it.
+     */
+    boolean isOrphaned(PendingShipment pending, long now) {
+        return now - pending.getCreated().getTime() > orphanGraceMs;
+    }
+}
@@ -0,0 +1,126 @@
+package works.weave.socks.orders.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.prometheus.client.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.mvc.TypeReferences;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.config.CacheConfigurationProperties;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL based read-through cache for the HAL resources fetched during checkout, keyed by resource URI.
+ * Caffeine evicts by size using W-TinyLFU. Each resource type has its own cache and can be switched on separately.
+ */
+@Component
+public class ResourceCache {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, Cache<URI, Resource<?>>> caches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ResourceCache(CacheConfigurationProperties properties) {
+        properties.getResources().forEach((name, spec) -> {
+            if (spec.isEnabled()) {
+                LOG.info("Caching " + name + " resources: ttl=" + spec.getTtlSeconds() + "s, size="
+                        + spec.getMaximumSize());
+                caches.put(name, Caffeine.newBuilder()
+                        .maximumSize(spec.getMaximumSize())
+                        .expireAfterWrite(spec.getTtlSeconds(), TimeUnit.SECONDS)
+                        .recordStats()
+                        .build());
+            }
+        });
+        new CacheCollector(caches).register();
+    }
+
+    /**
+     * Returns the cached resource for {@code url}, or calls {@code loader} and caches its result. Types without an
+     * enabled cache go straight to the loader.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<Resource<T>> get(URI url, TypeReferences.ResourceType<T> type,
+                                                  Supplier<CompletableFuture<Resource<T>>> loader) {
+        Cache<URI, Resource<?>> cache = caches.get(nameOf(type));
+        if (cache == null) {
+            return loader.get();
+        }
+        Resource<T> cached = (Resource<T>) cache.getIfPresent(url);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Resource<T>> loaded = loader.get();
+        return Futures.failUpstream(loaded.whenComplete((resource, e) -> {
+            if (resource != null) {
+                cache.put(url, resource);
+            }
+        }), loaded);
+    }
+
+    // Resource<Customer> -> "customer"
+    static String nameOf(TypeReferences.ResourceType<?> type) {
+        Type resourceType = type.getType();
+        if (resourceType instanceof ParameterizedType) {
+            Type content = ((ParameterizedType) resourceType).getActualTypeArguments()[0];
+            if (content instanceof Class) {
+                return ((Class<?>) content).getSimpleName().toLowerCase();
+            }
+        }
+        return resourceType.getTypeName();
+    }
+
+    private static class CacheCollector extends Collector {
+        private final Map<String, Cache<URI, Resource<?>>> caches;
+
+        private CacheCollector(Map<String, Cache<URI, Resource<?>>> caches) {
+            this.caches = caches;
+        }
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples.Sample> hits = new ArrayList<>();
+            List<MetricFamilySamples.Sample> misses = new ArrayList<>();
+            List<MetricFamilySamples.Sample> evictions = new ArrayList<>();
+            List<MetricFamilySamples.Sample> size = new ArrayList<>();
+            List<String> labelNames = Collections.singletonList("cache");
+            caches.forEach((name, cache) -> {
+                CacheStats stats = cache.stats();
+                List<String> labelValues = Collections.singletonList(name);
+                hits.add(new MetricFamilySamples.Sample("resource_cache_hits_total", labelNames, labelValues,
+                        stats.hitCount()));
+                misses.add(new MetricFamilySamples.Sample("resource_cache_misses_total", labelNames, labelValues,
+                        stats.missCount()));
+                evictions.add(new MetricFamilySamples.Sample("resource_cache_evictions_total", labelNames,
+                        labelValues, stats.evictionCount()));
+                size.add(new MetricFamilySamples.Sample("resource_cache_size", labelNames, labelValues,
+                        cache.estimatedSize()));
+            });
+            return Arrays.asList(
+                    new MetricFamilySamples("resource_cache_hits_total", Type.COUNTER,
+                            "Downstream resources served from the cache.", hits),
+                    new MetricFamilySamples("resource_cache_misses_total", Type.COUNTER,
+                            "Downstream resource lookups that missed the cache.", misses),
+                    new MetricFamilySamples("resource_cache_evictions_total", Type.COUNTER,
+                            "Resources evicted from the cache by size or TTL.", evictions),
+                    new MetricFamilySamples("resource_cache_size", Type.GAUGE,
+                            "Approximate number of cached resources.", size));
+        }
+    }
+}
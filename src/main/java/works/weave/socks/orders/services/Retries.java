@@ -0,0 +1,141 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import works.weave.socks.orders.config.DownstreamExecutors;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries idempotent downstream GETs that failed with an I/O error or a 502, 503 or 504, up to
+ * {@code http.retry.max-attempts} attempts in total. Backoff is exponential with full jitter. Retries are paid for
+ * from a per-dependency {@link TokenBudget} of {@code http.retry.budget-percent} of requests, and a retry that would
+ * start after the request's {@link Deadline} is not made.
+ */
+@Component
+public class Retries {
+    static final Counter retries = Counter.build()
+            .name("http_retries_total")
+            .help("Downstream GET retries by dependency: retried, budget_exhausted or gave_up (out of attempts).")
+            .labelNames("dependency", "result")
+            .register();
+
+    private static final double MAX_BURST = 10;
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Value("${http.retry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${http.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${http.retry.backoff-ms:50}")
+    private long backoffMs;
+
+    @Value("${http.retry.max-backoff-ms:1000}")
+    private long maxBackoffMs;
+
+    @Value("${http.retry.budget-percent:10}")
+    private double budgetPercent;
+
+    private final ConcurrentMap<String, TokenBudget> budgets = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "http-retries");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public <T> CompletableFuture<T> execute(RequestEntity<?> request, Supplier<CompletableFuture<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        String dependency = DownstreamExecutors.dependencyOf(request.getUrl());
+        TokenBudget budget = budgets.computeIfAbsent(dependency, key -> new TokenBudget(budgetPercent, MAX_BURST));
+        budget.deposit();
+        String header = request.getHeaders().getFirst(Deadline.HEADER);
+        Deadline deadline = header == null ? null : Deadline.after(Long.parseLong(header));
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(1, call, result, dependency, budget, deadline);
+        return result;
+    }
+
+    private <T> void attempt(int attempt, Supplier<CompletableFuture<T>> call, CompletableFuture<T> result,
+                             String dependency, TokenBudget budget, Deadline deadline) {
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        Futures.failUpstream(result, response);
+        response.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+                return;
+            }
+            if (result.isDone() || !isRetryable(e)) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (attempt >= maxAttempts) {
+                retries.labels(dependency, "gave_up").inc();
+                result.completeExceptionally(e);
+                return;
+            }
+            long ceiling = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+            long delayMs = ThreadLocalRandom.current().nextLong(ceiling + 1);
+            if (deadline != null && deadline.remainingMillis() <= delayMs) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (!budget.tryWithdraw()) {
+                retries.labels(dependency, "budget_exhausted").inc();
+                result.completeExceptionally(e);
+                return;
+            }
+            retries.labels(dependency, "retried").inc();
+            LOG.debug("Retrying " + dependency + " in " + delayMs + "ms after attempt " + attempt + ": " + e);
+            scheduler.schedule(() -> attempt(attempt + 1, call, result, dependency, budget, deadline),
+                    delayMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof HttpServerErrorException) {
+            HttpStatus status = ((HttpServerErrorException) e).getStatusCode();
+            return status == HttpStatus.BAD_GATEWAY || status == HttpStatus.SERVICE_UNAVAILABLE
+                    || status == HttpStatus.GATEWAY_TIMEOUT;
+        }
+        return e instanceof ResourceAccessException || e instanceof IOException;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
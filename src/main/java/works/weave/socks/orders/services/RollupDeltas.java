@@ -0,0 +1,123 @@
+package works.weave.socks.orders.services;
+
+import org.springframework.data.mongodb.core.query.Update;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.entities.SalesRollup;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sales recorded since the last {@link SalesRollups} flush, one {@link Delta} per hourly and daily bucket.
+ */
+class RollupDeltas {
+    private static final DateTimeFormatter HOUR_ID = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH");
+
+    private static final DateTimeFormatter DAY_ID = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final ConcurrentMap<String, Delta> pending = new ConcurrentHashMap<>();
+
+    void add(CustomerOrder order) {
+        ZonedDateTime date = order.getDate().toInstant().atZone(ZoneOffset.UTC);
+        add(SalesRollup.HOUR, date.truncatedTo(ChronoUnit.HOURS), HOUR_ID, order);
+        add(SalesRollup.DAY, date.truncatedTo(ChronoUnit.DAYS), DAY_ID, order);
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Removes and returns every delta. Orders recorded from now on start new deltas.
+     */
+    List<Delta> drain() {
+        List<Delta> batch = new ArrayList<>();
+        for (String id : pending.keySet()) {
+            Delta delta = pending.remove(id);
+            if (delta != null) {
+                batch.add(delta);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Puts back a delta that could not be written, merged into whatever its bucket collected since it was drained.
+     */
+    void keep(Delta delta) {
+        pending.merge(delta.id, delta, Delta::merge);
+    }
+
+    private void add(String granularity, ZonedDateTime bucketStart, DateTimeFormatter format, CustomerOrder order) {
+        String id = granularity + ":" + format.format(bucketStart);
+        pending.compute(id, (key, delta) -> {
+            Delta next = delta != null ? delta : new Delta(id, granularity, Date.from(bucketStart.toInstant()));
+            next.add(order);
+            return next;
+        });
+    }
+
+    /**
+     * Sales added to one bucket since the last flush. Only mutated inside {@link ConcurrentMap#compute} and
+     * {@link ConcurrentMap#merge}, and flushed after being removed from the map.
+     */
+    static class Delta {
+        final String id;
+        private final String granularity;
+        private final Date bucketStart;
+        private long orderCount;
+        private double revenue;
+        private final Map<String, Long> units = new HashMap<>();
+
+        private Delta(String id, String granularity, Date bucketStart) {
+            this.id = id;
+            this.granularity = granularity;
+            this.bucketStart = bucketStart;
+        }
+
+        private void add(CustomerOrder order) {
+            orderCount++;
+            revenue += order.getTotal();
+            if (order.getItems() != null) {
+                for (Item item : order.getItems()) {
+                    units.merge(fieldName(item.getItemId()), (long) item.getQuantity(), Long::sum);
+                }
+            }
+        }
+
+        private Delta merge(Delta other) {
+            orderCount += other.orderCount;
+            revenue += other.revenue;
+            other.units.forEach((itemId, count) -> units.merge(itemId, count, Long::sum));
+            return this;
+        }
+
+        Update toUpdate() {
+            Update update = new Update()
+                    .setOnInsert("granularity", granularity)
+                    .setOnInsert("bucketStart", bucketStart)
+                    .inc("orderCount", orderCount)
+                    .inc("revenue", revenue);
+            units.forEach((itemId, count) -> update.inc("units." + itemId, count));
+            return update;
+        }
+
+        /**
+         * Item ids become field names; Mongo does not allow dots or a leading {@code $} in those.
+         */
+        private static String fieldName(String itemId) {
+            String name = String.valueOf(itemId).replace('.', '_');
+            return name.startsWith("$") ? "_" + name.substring(1) : name;
+        }
+    }
+}
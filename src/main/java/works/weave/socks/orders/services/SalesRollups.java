@@ -0,0 +1,112 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.BulkWriteError;
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.SalesRollup;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Keeps hourly and daily {@link SalesRollup}s up to date as orders are placed, so reports never have to scan the
+ * orders collection. Checkouts only add their order to an in-memory delta per bucket; every
+ * {@code rollups.flush-ms} the deltas are written as one unordered bulk of {@code $inc} upserts. Deltas of a failed
+ * flush are kept for the next one. Deltas not yet flushed when the process dies are lost.
+ */
+@Service
+public class SalesRollups {
+    static final Counter flushes = Counter.build()
+            .name("sales_rollup_flushes_total")
+            .help("Rollup flushes by result: ok or failed.")
+            .labelNames("result")
+            .register();
+
+    public static final int MAX_BUCKETS = 10000;
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${rollups.enabled:true}")
+    private boolean enabled;
+
+    private final RollupDeltas pending = new RollupDeltas();
+
+    public void record(CustomerOrder order) {
+        if (!enabled) {
+            return;
+        }
+        pending.add(order);
+    }
+
+    public List<SalesRollup> find(String granularity, Date from, Date to) {
+        if (!SalesRollup.HOUR.equals(granularity) && !SalesRollup.DAY.equals(granularity)) {
+            throw new InvalidRollupRequestException("granularity must be " + SalesRollup.HOUR + " or "
+                    + SalesRollup.DAY + ", not " + granularity);
+        }
+        if (!from.before(to)) {
+            throw new InvalidRollupRequestException("from must be before to");
+        }
+        Query query = new Query(where("granularity").is(granularity).and("bucketStart").gte(from).lt(to))
+                .with(new Sort(Sort.Direction.ASC, "bucketStart"))
+                .limit(MAX_BUCKETS);
+        return mongoTemplate.find(query, SalesRollup.class);
+    }
+
+    @Scheduled(fixedDelayString = "${rollups.flush-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<RollupDeltas.Delta> batch = pending.drain();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SalesRollup.class);
+        batch.forEach(delta -> bulk.upsert(new Query(where("_id").is(delta.id)), delta.toUpdate()));
+        try {
+            bulk.execute();
+            flushes.labels("ok").inc();
+            LOG.debug("Flushed " + batch.size() + " sales rollups");
+        } catch (BulkOperationException e) {
+            flushes.labels("failed").inc();
+            LOG.warn("Unable to flush " + e.getErrors().size() + " of " + batch.size() + " sales rollups: "
+                    + e.getMessage());
+            for (BulkWriteError error : e.getErrors()) {
+                pending.keep(batch.get(error.getIndex()));
+            }
+        } catch (RuntimeException e) {
+            // Nothing is known to have been applied; retrying may count some of it twice, dropping loses it all.
+            flushes.labels("failed").inc();
+            LOG.warn("Unable to flush sales rollups: " + e.getMessage());
+            batch.forEach(pending::keep);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public static class InvalidRollupRequestException extends IllegalStateException {
+        public InvalidRollupRequestException(String s) {
+            super(s);
+        }
+    }
+}
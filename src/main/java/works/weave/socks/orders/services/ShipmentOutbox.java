@@ -0,0 +1,205 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.config.DownstreamExecutors;
+import works.weave.socks.orders.config.OrdersConfigurationProperties;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.PendingShipment;
+import works.weave.socks.orders.entities.Shipment;
+import works.weave.socks.orders.repositories.PendingShipmentRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Takes the shipping call off the checkout path when {@code shipping.outbox.enabled=true}. Checkout records a
+ * {@link PendingShipment} next to the order and answers right away; {@link #dispatch()} drains the outbox in
+ * batches, posts to the shipping service with exponential backoff between attempts and stores the resulting
+ * {@link Shipment} on the order.
+ * <p>
+ * Mongo has no multi-document transactions here, so the entry is written before the order and an entry whose order
+ * never appeared is dropped after {@code shipping.outbox.orphan-grace-ms}. Entries are leased with findAndModify,
+ * so several instances can drain the same outbox.
+ */
+@Service
+public class ShipmentOutbox {
+    static final Counter dispatched = Counter.build()
+            .name("shipment_outbox_dispatched_total")
+            .help("Outbox entries processed, by result: shipped, retry, failed or orphaned.")
+            .labelNames("result")
+            .register();
+
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private OrdersConfigurationProperties config;
+
+    @Autowired
+    private AsyncGetService asyncGetService;
+
+    @Autowired
+    private DownstreamExecutors executors;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PendingShipmentRepository pendingShipmentRepository;
+
+    @Value("${shipping.outbox.enabled:false}")
+    private boolean enabled;
+
+    @Value("${shipping.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${shipping.outbox.lease-ms:30000}")
+    private long leaseMs;
+
+    @Value("${shipping.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${shipping.outbox.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${shipping.outbox.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${shipping.outbox.orphan-grace-ms:300000}")
+    private long orphanGraceMs;
+
+    private OutboxSchedule schedule;
+
+    @PostConstruct
+    public void init() {
+        schedule = new OutboxSchedule(leaseMs, maxAttempts, retryBackoffMs, maxBackoffMs, orphanGraceMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public PendingShipment enqueue(PendingShipment pending) {
+        pending = pendingShipmentRepository.save(pending);
+        LOG.debug("Enqueued shipment: " + pending);
+        return pending;
+    }
+
+    /**
+     * Enqueues the shipments of a batch of orders with one bulk insert.
+     */
+    public void enqueue(Collection<PendingShipment> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        mongoTemplate.insert(pending, PendingShipment.class);
+        LOG.debug("Enqueued " + pending.size() + " shipments");
+    }
+
+    /**
+     * Removes the entries of orders that were rejected and will never be saved.
+     */
+    public void cancel(Collection<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(new Query(where("_id").in(orderIds)), PendingShipment.class);
+        } catch (RuntimeException e) {
+            // They are dropped as orphans after shipping.outbox.orphan-grace-ms.
+            LOG.warn("Unable to remove " + orderIds.size() + " shipments of rejected orders: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shipping.outbox.poll-ms:1000}")
+    public void dispatch() {
+        if (!enabled) {
+            return;
+        }
+        List<PendingShipment> batch = lease();
+        if (batch.isEmpty()) {
+            return;
+        }
+        LOG.debug("Dispatching " + batch.size() + " pending shipments");
+        List<CompletableFuture<Void>> shipments = new ArrayList<>();
+        for (PendingShipment pending : batch) {
+            shipments.add(ship(pending));
+        }
+        CompletableFuture.allOf(shipments.toArray(new CompletableFuture[shipments.size()])).join();
+    }
+
+    private List<PendingShipment> lease() {
+        List<PendingShipment> batch = new ArrayList<>();
+        Date now = new Date();
+        Query due = new Query(where("nextAttempt").lte(now)).with(new Sort(Sort.Direction.ASC, "nextAttempt"));
+        Update leased = new Update().set("nextAttempt", schedule.leasedUntil(now.getTime()));
+        while (batch.size() < batchSize) {
+            PendingShipment pending = mongoTemplate.findAndModify(due, leased,
+                    FindAndModifyOptions.options().returnNew(true), PendingShipment.class);
+            if (pending == null) {
+                break;
+            }
+            batch.add(pending);
+        }
+        return batch;
+    }
+
+    private CompletableFuture<Void> ship(PendingShipment pending) {
+        Query order = new Query(where("_id").is(pending.getId()));
+        if (!mongoTemplate.exists(order, CustomerOrder.class)) {
+            if (schedule.isOrphaned(pending, System.currentTimeMillis())) {
+                LOG.warn("Dropping shipment for order that was never saved: " + pending);
+                pendingShipmentRepository.delete(pending.getId());
+                dispatched.labels("orphaned").inc();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncGetService.postResource(config.getShippingUri(),
+                new Shipment(pending.getShipmentId(), pending.getCustomerId()),
+                new ParameterizedTypeReference<Shipment>() {
+                })
+                .handleAsync((shipment, e) -> {
+                    if (e == null) {
+                        mongoTemplate.updateFirst(order, new Update().set("shipment", shipment), CustomerOrder.class);
+                        pendingShipmentRepository.delete(pending.getId());
+                        dispatched.labels("shipped").inc();
+                    } else {
+                        retryLater(pending, e);
+                    }
+                    return null;
+                }, executors.forDependency("orders-db"));
+    }
+
+    private void retryLater(PendingShipment pending, Throwable e) {
+        int attempts = pending.getAttempts() + 1;
+        Date nextAttempt = schedule.nextAttempt(attempts, System.currentTimeMillis());
+        // A null nextAttempt is never due again; the entry stays for inspection.
+        Update update = new Update().set("attempts", attempts).set("lastError", String.valueOf(e.getMessage()))
+                .set("nextAttempt", nextAttempt);
+        if (nextAttempt == null) {
+            LOG.error("Giving up on shipment after " + attempts + " attempts: " + pending, e);
+            dispatched.labels("failed").inc();
+        } else {
+            LOG.warn("Shipment failed, retrying at " + nextAttempt + ": " + pending);
+            dispatched.labels("retry").inc();
+        }
+        mongoTemplate.updateFirst(new Query(where("_id").is(pending.getId())), update, PendingShipment.class);
+    }
+}
@@ -0,0 +1,123 @@
+package works.weave.socks.orders.services;
+
+import io.prometheus.client.Counter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.config.DownstreamExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical concurrent downstream GETs into one request. The first caller for a key issues the request,
+ * everyone arriving while it is in flight gets the same result. The key is method, URI, accept header and target
+ * type.
+ */
+@Component
+public class SingleFlight {
+    static final Counter requests = Counter.build()
+            .name("http_single_flight_requests_total")
+            .help("Downstream GETs by dependency, split into issued and coalesced onto an in-flight request.")
+            .labelNames("dependency", "result")
+            .register();
+
+    @Value("${http.single-flight.enabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentMap<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+    public <T> CompletableFuture<T> execute(RequestEntity<?> request, ParameterizedTypeReference<?> responseType,
+                                            Supplier<CompletableFuture<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        String key = request.getMethod() + " " + request.getUrl() + " " + request.getHeaders().getAccept() + " "
+                + responseType.getType().getTypeName();
+        return execute(key, DownstreamExecutors.dependencyOf(request.getUrl()), call);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> execute(String key, String dependency, Supplier<CompletableFuture<T>> call) {
+        Flight<T> flight = new Flight<>();
+        Flight<T> existing;
+        while ((existing = (Flight<T>) inFlight.putIfAbsent(key, flight)) != null) {
+            CompletableFuture<T> joined = existing.join();
+            if (joined != null) {
+                requests.labels(dependency, "coalesced").inc();
+                return joined;
+            }
+            // Every caller of that flight gave up and its request is being aborted; start a new one.
+            inFlight.remove(key, existing);
+        }
+        requests.labels(dependency, "issued").inc();
+        CompletableFuture<T> joined = flight.join();
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.leader.completeExceptionally(e);
+            return joined;
+        }
+        flight.start(response);
+        response.whenComplete((result, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.leader.completeExceptionally(e);
+            } else {
+                flight.leader.complete(result);
+            }
+        });
+        return joined;
+    }
+
+    /**
+     * One request and the callers waiting for it. Callers get their own stage, so one caller timing out or cancelling
+     * does not fail the others; the request itself is only failed, and so aborted, once every caller has given up.
+     */
+    private static class Flight<T> {
+        private final CompletableFuture<T> leader = new CompletableFuture<>();
+        private CompletableFuture<T> response;
+        private Throwable abandonedWith;
+        private int waiters;
+
+        /**
+         * Returns a stage for one more caller, or {@code null} if every earlier caller already gave up.
+         */
+        private synchronized CompletableFuture<T> join() {
+            if (abandonedWith != null) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<T> stage = leader.thenApply(Function.identity());
+            stage.whenComplete((result, e) -> {
+                if (e != null && !leader.isDone()) {
+                    leave(e);
+                }
+            });
+            return stage;
+        }
+
+        private synchronized void start(CompletableFuture<T> response) {
+            this.response = response;
+            if (abandonedWith != null) {
+                response.completeExceptionally(abandonedWith);
+            }
+        }
+
+        private synchronized void leave(Throwable e) {
+            if (--waiters > 0 || abandonedWith != null) {
+                return;
+            }
+            abandonedWith = e;
+            if (response != null) {
+                response.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package works.weave.socks.orders.services;
+
+/**
+ * Token bucket that caps extra requests (retries, hedges) at a share of real traffic. Every request deposits
+ * {@code percent}/100 of a token, every extra request withdraws a whole one, and at most {@code maxTokens} are
+ * saved up for bursts.
+ */
+class TokenBudget {
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    TokenBudget(double percent, double maxTokens) {
+        this.ratio = percent / 100;
+        this.maxTokens = maxTokens;
+        this.tokens = Math.min(1, maxTokens);
+    }
+
+    synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+}
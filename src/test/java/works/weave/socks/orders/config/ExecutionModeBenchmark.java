@@ -0,0 +1,112 @@
+package works.weave.socks.orders.config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executor;
+
+/**
+ * Compares the platform thread pools with the virtual thread executors for a simulated checkout: three user lookups
+ * and one carts lookup in parallel, then payment, then shipping, each a blocking call with a fixed latency. Requests
+ * are handled by a 200 thread "Tomcat" pool in platform mode and by one virtual thread each in virtual mode, and both
+ * modes use the executors {@link DownstreamExecutors} builds from the default {@link ExecutorConfigurationProperties}.
+ * <p>
+ * Not a unit test (surefire only runs {@code Unit*}); run the main method against the test classpath on JDK 21+:
+ * {@code java -cp target/classes:target/test-classes works.weave.socks.orders.config.ExecutionModeBenchmark [orders]
+ * [concurrency] [latencyMs]}
+ */
+public class ExecutionModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        System.out.println("orders=" + orders + " concurrency=" + concurrency + " latency=" + latencyMs + "ms");
+        run("platform", false, orders, concurrency, latencyMs);
+        if (VirtualThreads.isSupported()) {
+            run("virtual", true, orders, concurrency, latencyMs);
+        } else {
+            System.out.println("virtual: not supported by this JVM");
+        }
+    }
+
+    private static void run(String mode, boolean virtual, int orders, int concurrency, long latencyMs)
+            throws InterruptedException {
+        ExecutorConfigurationProperties properties = new ExecutorConfigurationProperties();
+        properties.setVirtualThreads(virtual);
+        DownstreamExecutors executors = new DownstreamExecutors(properties);
+        Executor user = executors.forDependency("user");
+        Executor carts = executors.forDependency("carts");
+        Executor payment = executors.forDependency("payment");
+        Executor shipping = executors.forDependency("shipping");
+        ExecutorService requests = virtual ? VirtualThreads.newExecutor("request-") : Executors.newFixedThreadPool(200);
+
+        // The peak is JVM wide; without a reset the second mode would report the first one's peak.
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < orders; i++) {
+            inFlight.acquire();
+            long submitted = System.nanoTime();
+            requests.execute(() -> {
+                try {
+                    CompletableFuture.allOf(
+                            call(user, latencyMs), call(user, latencyMs), call(user, latencyMs),
+                            call(carts, latencyMs))
+                            .thenCompose(ignored -> call(payment, latencyMs))
+                            .thenCompose(ignored -> call(shipping, latencyMs))
+                            .join();
+                    latencies.add(System.nanoTime() - submitted);
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        inFlight.acquire(concurrency);
+        long elapsed = System.nanoTime() - start;
+        int peakThreads = threads.getPeakThreadCount();
+        requests.shutdown();
+        executors.shutdown();
+        requests.awaitTermination(10, TimeUnit.SECONDS);
+
+        Collections.sort(latencies);
+        System.out.printf("%-9s completed=%.0f/s p50=%dms p99=%dms failed=%d peakThreads=%d%n",
+                mode,
+                latencies.size() / (elapsed / 1e9),
+                percentile(latencies, 0.50),
+                percentile(latencies, 0.99),
+                failures.get(),
+                peakThreads);
+    }
+
+    private static CompletableFuture<Void> call(Executor executor, long latencyMs) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor);
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get((int) Math.min(sorted.size() - 1, sorted.size() * p)));
+    }
+}
@@ -0,0 +1,70 @@
+package works.weave.socks.orders.middleware;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UnitAdaptiveConcurrencyLimiter {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 0.2, 10, 600);
+
+    @Test
+    public void rejectsOverTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        limiter.release(FAST);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void growsWhileSaturatedAndLatencyHolds() {
+        run(50, FAST);
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() > 10);
+    }
+
+    @Test
+    public void doesNotGrowWhileIdle() {
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(FAST);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        run(20, FAST);
+        int before = limiter.getLimit();
+        run(20, SLOW);
+        assertTrue(limiter.getLimit() + " < " + before, limiter.getLimit() < before);
+    }
+
+    /**
+     * Completes {@code rounds} requests with the limiter kept full.
+     */
+    private void run(int rounds, long latency) {
+        fill();
+        for (int i = 0; i < rounds; i++) {
+            limiter.release(latency);
+            fill();
+        }
+        while (limiter.getInFlight() > 0) {
+            limiter.release(latency);
+        }
+    }
+
+    private void fill() {
+        boolean acquired;
+        do {
+            acquired = limiter.tryAcquire();
+        } while (acquired);
+    }
+}
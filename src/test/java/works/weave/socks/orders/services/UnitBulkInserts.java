@@ -0,0 +1,38 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UnitBulkInserts {
+    @Test
+    public void onlyRejectedDocumentsFail() {
+        Map<Integer, String> failures = BulkInserts.failures(Arrays.asList(
+                new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 1),
+                new BulkWriteError(121, "validation failed", new BasicDBObject(), 3)), null, 5);
+        assertEquals(2, failures.size());
+        assertEquals("duplicate key", failures.get(1));
+        assertEquals("validation failed", failures.get(3));
+    }
+
+    @Test
+    public void writeConcernErrorFailsEveryDocument() {
+        Map<Integer, String> failures = BulkInserts.failures(Collections.emptyList(), "wtimeout", 3);
+        assertEquals(3, failures.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("wtimeout", failures.get(i));
+        }
+    }
+
+    @Test
+    public void noErrorsMeansEverythingWasSaved() {
+        assertTrue(BulkInserts.failures(Collections.emptyList(), null, 4).isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+package works.weave.socks.orders.services;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UnitChunkedExport {
+    private final ExecutorService readers = Executors.newCachedThreadPool();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @After
+    public void shutdown() {
+        readers.shutdownNow();
+    }
+
+    @Test
+    public void writesChunksInOrderWhenLaterOnesFinishFirst() throws IOException {
+        CountDownLatch laterChunksRead = new CountDownLatch(3);
+        ChunkedExport export = new ChunkedExport(readers, 4, 10, 100, (from, to, sink) -> {
+            if (from.getTime() == 0) {
+                await(laterChunksRead);
+            }
+            for (long t = from.getTime(); t < to.getTime(); t++) {
+                sink.test(String.valueOf(t).getBytes(StandardCharsets.UTF_8));
+            }
+            if (from.getTime() != 0) {
+                laterChunksRead.countDown();
+            }
+        });
+
+        assertEquals(40, export.writeTo(new Date(0), new Date(40), out));
+        assertEquals(range(0, 40), lines());
+    }
+
+    @Test
+    public void readsMoreChunksThanReadersOneWindowAtATime() throws IOException {
+        List<Long> starts = Collections.synchronizedList(new ArrayList<>());
+        ChunkedExport export = new ChunkedExport(readers, 2, 5, 100, (from, to, sink) -> {
+            starts.add(from.getTime());
+            for (long t = from.getTime(); t < to.getTime(); t++) {
+                sink.test(String.valueOf(t).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        assertEquals(23, export.writeTo(new Date(0), new Date(23), out));
+        assertEquals(range(0, 23), lines());
+        Collections.sort(starts);
+        assertEquals(Arrays.asList(0L, 5L, 10L, 15L, 20L), starts);
+    }
+
+    @Test
+    public void splitsSmallRangesBetweenReadersAndCapsLargeOnes() {
+        ChunkedExport export = new ChunkedExport(readers, 4, 1000, 100, (from, to, sink) -> {
+        });
+        assertEquals(25, export.chunkWidth(0, 100));
+        assertEquals(26, export.chunkWidth(0, 101));
+        assertEquals(1000, export.chunkWidth(0, 1000000));
+        assertEquals(1, export.chunkWidth(0, 1));
+    }
+
+    @Test
+    public void failsAfterWritingTheChunksBeforeTheFailedOne() throws IOException {
+        ChunkedExport export = new ChunkedExport(readers, 4, 10, 100, (from, to, sink) -> {
+            if (from.getTime() == 10) {
+                throw new IOException("cursor killed");
+            }
+            for (long t = from.getTime(); t < to.getTime(); t++) {
+                sink.test(String.valueOf(t).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        try {
+            export.writeTo(new Date(0), new Date(40), out);
+            fail("expected the export to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(range(0, 10), lines());
+    }
+
+    private List<String> lines() {
+        String written = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        return written.isEmpty() ? Collections.emptyList() : Arrays.asList(written.split("\n"));
+    }
+
+    private static List<String> range(long from, long to) {
+        List<String> lines = new ArrayList<>();
+        for (long t = from; t < to; t++) {
+            lines.add(String.valueOf(t));
+        }
+        return lines;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import works.weave.socks.orders.config.CircuitBreakerConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UnitCircuitBreaker {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    private final List<String> transitions = new ArrayList<>();
+    private long now;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        CircuitBreakerConfigurationProperties properties = new CircuitBreakerConfigurationProperties();
+        properties.setWindowSize(10);
+        properties.setMinimumCalls(5);
+        properties.setOpenMs(1000);
+        properties.setHalfOpenCalls(2);
+        breaker = new CircuitBreaker(properties, () -> now, (from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        call(4, FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensOnFailureRate() {
+        call(3, FAST, false);
+        call(3, FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void opensOnSlowCallRate() {
+        call(1, FAST, false);
+        call(4, SLOW, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenProbesCloseTheBreaker() {
+        call(5, FAST, true);
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void failedProbeReopensTheBreaker() {
+        call(5, FAST, true);
+        now += TimeUnit.SECONDS.toNanos(1);
+        call(2, FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void cancelledProbeFreesItsSlot() {
+        call(5, FAST, true);
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onCancelled();
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void cancelledCallsAreNotRecorded() {
+        call(4, FAST, true);
+        assertTrue(breaker.tryAcquire());
+        breaker.onCancelled();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(1, FAST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void call(int times, long duration, boolean failure) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(duration, failure);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UnitConditionalGetCache {
+    private static final URI ADDRESS = URI.create("http://user/addresses/1");
+
+    private final ConditionalGetCache cache = new ConditionalGetCache(100);
+    private final List<RequestEntity<?>> sent = new ArrayList<>();
+    private final Deque<ResponseEntity<?>> responses = new ArrayDeque<>();
+
+    private final DownstreamClient client = new DownstreamClient() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> CompletableFuture<ResponseEntity<T>> exchange(RequestEntity<?> request,
+                                                                 ParameterizedTypeReference<T> responseType) {
+            sent.add(request);
+            return CompletableFuture.completedFuture((ResponseEntity<T>) responses.remove());
+        }
+    };
+
+    @Test
+    public void answersNotModifiedFromTheRememberedBody() {
+        responses.add(ok("street", "\"v1\""));
+        responses.add(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+
+        assertEquals("street", get(MediaType.APPLICATION_JSON, new ParameterizedTypeReference<String>() {
+        }));
+        assertEquals("street", get(MediaType.APPLICATION_JSON, new ParameterizedTypeReference<String>() {
+        }));
+        assertEquals("\"v1\"", sent.get(1).getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    @Test
+    public void doesNotRevalidateABodyDecodedAsAnotherType() {
+        responses.add(ok("street", "\"v1\""));
+        responses.add(ok(new Address("street"), "\"v1\""));
+        responses.add(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+
+        assertEquals("street", get(MediaType.APPLICATION_JSON, new ParameterizedTypeReference<String>() {
+        }));
+        Address address = get(MediaType.APPLICATION_JSON, new ParameterizedTypeReference<Address>() {
+        });
+        assertNull(sent.get(1).getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals("street", address.street);
+
+        Address revalidated = get(MediaType.APPLICATION_JSON, new ParameterizedTypeReference<Address>() {
+        });
+        assertEquals("\"v1\"", sent.get(2).getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals("street", revalidated.street);
+    }
+
+    @Test
+    public void doesNotRevalidateABodyOfAnotherMediaType() {
+        responses.add(ok("street", "\"v1\""));
+        responses.add(ok("{\"street\":\"street\"}", "\"v1\""));
+
+        get(MediaType.APPLICATION_JSON, new ParameterizedTypeReference<String>() {
+        });
+        get(MediaType.valueOf("application/hal+json"), new ParameterizedTypeReference<String>() {
+        });
+        assertNull(sent.get(1).getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    private <T> T get(MediaType accept, ParameterizedTypeReference<T> type) {
+        RequestEntity<Void> request = RequestEntity.get(ADDRESS).accept(accept).build();
+        return cache.exchange(request, type, client).join().getBody();
+    }
+
+    private static <T> ResponseEntity<T> ok(T body, String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private static class Address {
+        private final String street;
+
+        private Address(String street) {
+            this.street = street;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.services.GroupCommit.PendingWrite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UnitGroupCommit {
+    private final List<List<PendingWrite>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void batchesConcurrentOrdersUpToMaxBatchSize() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommit groupCommit = new GroupCommit(3, 1000, 100, batch -> {
+            batches.add(batch);
+            writing.countDown();
+            await(release);
+            GroupCommit.complete(batch, Collections.emptyMap());
+        });
+        groupCommit.start("test-group-commit");
+        List<CompletableFuture<CustomerOrder>> saved = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            saved.add(groupCommit.submit(new CustomerOrder()));
+        }
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (CompletableFuture<CustomerOrder> future : saved) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        groupCommit.stop(1000);
+        for (List<PendingWrite> batch : batches) {
+            assertTrue(batch.size() <= 3);
+        }
+    }
+
+    @Test
+    public void rejectsOrdersWhileTheQueueIsFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommit groupCommit = new GroupCommit(1, 0, 2, batch -> {
+            writing.countDown();
+            await(release);
+            GroupCommit.complete(batch, Collections.emptyMap());
+        });
+        groupCommit.start("test-group-commit");
+        CompletableFuture<CustomerOrder> first = groupCommit.submit(new CustomerOrder());
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<CustomerOrder> second = groupCommit.submit(new CustomerOrder());
+        CompletableFuture<CustomerOrder> third = groupCommit.submit(new CustomerOrder());
+        assertRejected(groupCommit.submit(new CustomerOrder()));
+
+        release.countDown();
+        CompletableFuture.allOf(first, second, third).get(5, TimeUnit.SECONDS);
+        groupCommit.stop(1000);
+    }
+
+    @Test
+    public void stopWritesQueuedOrdersAndRejectsNewOnes() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommit groupCommit = new GroupCommit(2, 0, 10, batch -> {
+            batches.add(batch);
+            writing.countDown();
+            await(release);
+            GroupCommit.complete(batch, Collections.emptyMap());
+        });
+        groupCommit.start("test-group-commit");
+        List<CompletableFuture<CustomerOrder>> saved = new ArrayList<>();
+        saved.add(groupCommit.submit(new CustomerOrder()));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            saved.add(groupCommit.submit(new CustomerOrder()));
+        }
+        release.countDown();
+        groupCommit.stop(5000);
+
+        for (CompletableFuture<CustomerOrder> future : saved) {
+            assertTrue(future.isDone());
+            future.join();
+        }
+        assertRejected(groupCommit.submit(new CustomerOrder()));
+        assertEquals(0, groupCommit.size());
+    }
+
+    @Test
+    public void completesEachWriteWithItsOwnOutcome() {
+        List<PendingWrite> batch = Arrays.asList(write(), write(), write());
+        Map<Integer, String> failures = new HashMap<>();
+        failures.put(1, "duplicate key");
+        GroupCommit.complete(batch, failures);
+
+        assertSame(batch.get(0).order, batch.get(0).future.join());
+        assertSame(batch.get(2).order, batch.get(2).future.join());
+        try {
+            batch.get(1).future.join();
+            fail("expected the rejected order to fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause().getMessage().contains("duplicate key"));
+        }
+    }
+
+    private static PendingWrite write() {
+        return new PendingWrite(new CustomerOrder());
+    }
+
+    private static void assertRejected(CompletableFuture<CustomerOrder> future) {
+        try {
+            future.join();
+            fail("expected a rejection");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import works.weave.socks.orders.config.AbortableCall;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UnitHedgedRequests {
+    private final HedgedRequests.Attempts<String> attempts = new HedgedRequests.Attempts<>("catalogue");
+    private final ResponseEntity<String> ok = new ResponseEntity<>("ok", HttpStatus.OK);
+
+    @Test
+    public void abortsThePrimaryWhenTheHedgeWins() {
+        Request primary = new Request();
+        Request hedge = new Request();
+        attempts.launch(() -> primary.future, false);
+        attempts.launch(() -> hedge.future, true);
+
+        hedge.future.complete(ok);
+        assertSame(ok, attempts.result.join());
+        assertTrue(primary.released.get());
+        assertFalse(hedge.released.get());
+    }
+
+    @Test
+    public void abortsTheHedgeWhenThePrimaryWins() {
+        Request primary = new Request();
+        Request hedge = new Request();
+        attempts.launch(() -> primary.future, false);
+        attempts.launch(() -> hedge.future, true);
+
+        primary.future.complete(ok);
+        assertSame(ok, attempts.result.join());
+        assertTrue(hedge.released.get());
+        assertFalse(primary.released.get());
+    }
+
+    @Test
+    public void waitsForTheHedgeWhenThePrimaryFails() {
+        Request primary = new Request();
+        Request hedge = new Request();
+        attempts.launch(() -> primary.future, false);
+        attempts.launch(() -> hedge.future, true);
+
+        primary.future.completeExceptionally(new IllegalStateException("reset"));
+        assertFalse(attempts.result.isDone());
+        hedge.future.complete(ok);
+        assertSame(ok, attempts.result.join());
+        assertFalse(hedge.released.get());
+    }
+
+    @Test
+    public void abortsEveryOpenRequestWhenTheCallerTimesOut() {
+        Request primary = new Request();
+        Request hedge = new Request();
+        attempts.launch(() -> primary.future, false);
+        attempts.launch(() -> hedge.future, true);
+
+        attempts.result.completeExceptionally(new TimeoutException("No response within 50ms"));
+        assertTrue(primary.released.get());
+        assertTrue(hedge.released.get());
+    }
+
+    @Test
+    public void abortsARequestCreatedAfterItsCallWasCancelled() {
+        AbortableCall call = new AbortableCall();
+        call.abortOnFailure(new CompletableFuture<String>()).cancel(true);
+        AtomicBoolean released = new AtomicBoolean();
+        call.attach(() -> released.set(true));
+        assertTrue(released.get());
+    }
+
+    @Test
+    public void ignoresAbortsOnceTheCallReturned() {
+        AbortableCall call = new AbortableCall();
+        AtomicBoolean released = new AtomicBoolean();
+        call.run(0, () -> {
+            call.attach(() -> released.set(true));
+            return "ok";
+        });
+        call.abort();
+        assertFalse(released.get());
+    }
+
+    /**
+     * A blocking request in flight, attached to its call the way the request factory of RestProxyTemplate does.
+     */
+    private static class Request {
+        private final AbortableCall call = new AbortableCall();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final CompletableFuture<ResponseEntity<String>> future =
+                call.abortOnFailure(new CompletableFuture<>());
+
+        private Request() {
+            call.attach(() -> released.set(true));
+        }
+    }
+}
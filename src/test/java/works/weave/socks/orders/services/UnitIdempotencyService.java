@@ -0,0 +1,116 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.IdempotencyRecord;
+import works.weave.socks.orders.resources.NewOrderResource;
+
+import java.net.URI;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class UnitIdempotencyService {
+    private static final long ABANDONED_AFTER = 120000;
+    private static final long NOW = 10000000L;
+
+    @Test
+    public void releasedKeyIsRetried() {
+        assertEquals(IdempotencyService.Claim.RELEASED, classify(null, "a"));
+    }
+
+    @Test
+    public void completedKeyIsReplayed() {
+        IdempotencyRecord record = record(IdempotencyRecord.COMPLETED, "a", NOW);
+        assertEquals(IdempotencyService.Claim.COMPLETED, classify(record, "a"));
+    }
+
+    @Test
+    public void differentBodyIsAMismatchWhateverTheStatus() {
+        for (String status : new String[]{IdempotencyRecord.IN_PROGRESS, IdempotencyRecord.PAID,
+                IdempotencyRecord.COMPLETED, IdempotencyRecord.FAILED}) {
+            assertEquals(IdempotencyService.Claim.MISMATCH, classify(record(status, "a", NOW), "b"));
+        }
+    }
+
+    @Test
+    public void runningAttemptIsWaitedFor() {
+        assertEquals(IdempotencyService.Claim.IN_PROGRESS,
+                classify(record(IdempotencyRecord.IN_PROGRESS, "a", NOW - ABANDONED_AFTER), "a"));
+        assertEquals(IdempotencyService.Claim.IN_PROGRESS,
+                classify(record(IdempotencyRecord.PAID, "a", NOW - ABANDONED_AFTER), "a"));
+    }
+
+    @Test
+    public void staleUnpaidAttemptIsTakenOver() {
+        assertEquals(IdempotencyService.Claim.ABANDONED,
+                classify(record(IdempotencyRecord.IN_PROGRESS, "a", NOW - ABANDONED_AFTER - 1), "a"));
+    }
+
+    @Test
+    public void paidAttemptIsNeverTakenOver() {
+        assertEquals(IdempotencyService.Claim.FAILED,
+                classify(record(IdempotencyRecord.PAID, "a", NOW - ABANDONED_AFTER - 1), "a"));
+        assertEquals(IdempotencyService.Claim.FAILED, classify(record(IdempotencyRecord.FAILED, "a", NOW), "a"));
+    }
+
+    @Test
+    public void replayReturnsTheSavedOrder() {
+        IdempotencyRecord record = record(IdempotencyRecord.COMPLETED, "a", NOW);
+        record.setOrderId("order");
+        CustomerOrder order = new CustomerOrder();
+        assertSame(order, IdempotencyService.replay(record, id -> "order".equals(id) ? order : null));
+    }
+
+    @Test
+    public void replayOfDeletedOrderIsNotFound() {
+        IdempotencyRecord record = record(IdempotencyRecord.COMPLETED, "a", NOW);
+        record.setOrderId("order");
+        assertNotFound(record);
+        record.setOrderId(null);
+        assertNotFound(record);
+    }
+
+    @Test
+    public void fingerprintDependsOnEveryReference() {
+        NewOrderResource item = order("1");
+        assertEquals(IdempotencyService.fingerprint(item), IdempotencyService.fingerprint(order("1")));
+        String fingerprint = IdempotencyService.fingerprint(item);
+        item.card = URI.create("http://user/cards/2");
+        assertFalse(fingerprint.equals(IdempotencyService.fingerprint(item)));
+        item = order("1");
+        item.items = URI.create("http://carts/carts/2/items");
+        assertFalse(fingerprint.equals(IdempotencyService.fingerprint(item)));
+    }
+
+    private static IdempotencyService.Claim classify(IdempotencyRecord record, String fingerprint) {
+        return IdempotencyService.classify(record, fingerprint, NOW, ABANDONED_AFTER);
+    }
+
+    private static IdempotencyRecord record(String status, String fingerprint, long created) {
+        IdempotencyRecord record = new IdempotencyRecord("key", fingerprint, status);
+        record.setCreated(new Date(created));
+        return record;
+    }
+
+    private static NewOrderResource order(String id) {
+        NewOrderResource item = new NewOrderResource();
+        item.customer = URI.create("http://user/customers/" + id);
+        item.address = URI.create("http://user/addresses/" + id);
+        item.card = URI.create("http://user/cards/" + id);
+        item.items = URI.create("http://carts/carts/" + id + "/items");
+        return item;
+    }
+
+    private static void assertNotFound(IdempotencyRecord record) {
+        try {
+            IdempotencyService.replay(record, id -> null);
+            fail("expected OrderNotFoundException");
+        } catch (IdempotencyService.OrderNotFoundException e) {
+            // expected
+        }
+    }
+}
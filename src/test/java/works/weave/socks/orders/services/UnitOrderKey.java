@@ -0,0 +1,69 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+import works.weave.socks.orders.services.OrderSearchService.InvalidPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UnitOrderKey {
+    private final OrderKey key = new OrderKey("57a98d98e4b00679b4a830af", new Date(1500000000000L),
+            "57a98d98e4b00679b4a830b2");
+
+    @Test
+    public void roundTripsThroughTheToken() {
+        OrderKey decoded = OrderKey.decode(key.encode(), "57a98d98e4b00679b4a830af");
+        assertEquals(key.customerId, decoded.customerId);
+        assertEquals(key.date, decoded.date);
+        assertEquals(key.id, decoded.id);
+    }
+
+    @Test
+    public void tokenIsUrlSafe() {
+        String token = new OrderKey("a/b+c?", new Date(0), "id").encode();
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+        assertEquals("a/b+c?", OrderKey.decode(token, null).customerId);
+    }
+
+    @Test
+    public void acceptsAnyCustomerWithoutACustomerFilter() {
+        assertEquals(key.customerId, OrderKey.decode(key.encode(), null).customerId);
+    }
+
+    @Test
+    public void rejectsAnotherCustomersToken() {
+        assertInvalid(key.encode(), "57a98d98e4b00679b4a830b0");
+    }
+
+    @Test
+    public void rejectsATokenRewrittenForAnotherCustomer() {
+        String token = encode("1500000000000:57a98d98e4b00679b4a830b2:57a98d98e4b00679b4a830b0");
+        assertInvalid(token, "57a98d98e4b00679b4a830af");
+    }
+
+    @Test
+    public void rejectsMalformedTokens() {
+        assertInvalid("not base64!", null);
+        assertInvalid(key.encode() + "*", null);
+        assertInvalid(encode("1500000000000:57a98d98e4b00679b4a830b2"), null);
+        assertInvalid(encode("yesterday:57a98d98e4b00679b4a830b2:57a98d98e4b00679b4a830af"), null);
+        assertInvalid("", null);
+    }
+
+    private static String encode(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertInvalid(String token, String customerId) {
+        try {
+            OrderKey.decode(token, customerId);
+            fail("expected " + token + " to be rejected");
+        } catch (InvalidPageRequestException expected) {
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.DBObject;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UnitOrderSearchService {
+    @Test
+    public void statsCommandIsHintedAndCovered() {
+        DBObject command = OrderSearchService.statsCommand("customerOrder", "c1");
+
+        assertEquals("customerOrder", command.get("aggregate"));
+        assertEquals("customerId_date_total", command.get("hint"));
+        List<?> pipeline = (List<?>) command.get("pipeline");
+        DBObject match = (DBObject) ((DBObject) pipeline.get(0)).get("$match");
+        assertEquals("c1", match.get("customerId"));
+        // Only indexed fields and no _id, so the plan needs no document.
+        DBObject project = (DBObject) ((DBObject) pipeline.get(1)).get("$project");
+        assertEquals("[date, total, _id]", project.keySet().toString());
+        assertEquals(0, project.get("_id"));
+        DBObject group = (DBObject) ((DBObject) pipeline.get(2)).get("$group");
+        assertNull(group.get("_id"));
+    }
+}
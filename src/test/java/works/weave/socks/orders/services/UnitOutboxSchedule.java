@@ -0,0 +1,46 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+import works.weave.socks.orders.entities.PendingShipment;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UnitOutboxSchedule {
+    private static final long NOW = 1000000L;
+
+    private final OutboxSchedule schedule = new OutboxSchedule(30000, 4, 1000, 5000, 60000);
+
+    @Test
+    public void leaseHidesTheEntryUntilItExpires() {
+        assertEquals(new Date(NOW + 30000), schedule.leasedUntil(NOW));
+    }
+
+    @Test
+    public void backsOffExponentiallyUpToTheCap() {
+        assertEquals(new Date(NOW + 1000), schedule.nextAttempt(1, NOW));
+        assertEquals(new Date(NOW + 2000), schedule.nextAttempt(2, NOW));
+        assertEquals(new Date(NOW + 4000), schedule.nextAttempt(3, NOW));
+        OutboxSchedule patient = new OutboxSchedule(30000, 100, 1000, 5000, 60000);
+        assertEquals(new Date(NOW + 5000), patient.nextAttempt(4, NOW));
+        assertEquals(new Date(NOW + 5000), patient.nextAttempt(99, NOW));
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        assertNull(schedule.nextAttempt(4, NOW));
+        assertNull(schedule.nextAttempt(5, NOW));
+    }
+
+    @Test
+    public void entryIsOrphanedOnlyAfterTheGracePeriod() {
+        PendingShipment pending = new PendingShipment("order", "customer", "shipment");
+        long created = pending.getCreated().getTime();
+        assertFalse(schedule.isOrphaned(pending, created + 60000));
+        assertTrue(schedule.isOrphaned(pending, created + 60001));
+    }
+}
@@ -0,0 +1,91 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.DBObject;
+import org.junit.Test;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.Item;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UnitRollupDeltas {
+    private final RollupDeltas deltas = new RollupDeltas();
+
+    @Test
+    public void addsEachOrderToItsHourAndDay() {
+        deltas.add(order("2017-03-01T14:05:00Z", 10, item("sock", 2)));
+        deltas.add(order("2017-03-01T14:55:00Z", 5, item("sock", 1)));
+        deltas.add(order("2017-03-01T15:10:00Z", 7, item("shoe", 1)));
+
+        List<RollupDeltas.Delta> batch = deltas.drain();
+        assertEquals(3, batch.size());
+        assertInc(find(batch, "HOUR:2017-03-01T14"), 2, 15, "sock", 3);
+        assertInc(find(batch, "HOUR:2017-03-01T15"), 1, 7, "shoe", 1);
+        assertInc(find(batch, "DAY:2017-03-01"), 3, 22, "sock", 3);
+        assertTrue(deltas.isEmpty());
+    }
+
+    @Test
+    public void mergesAFailedDeltaWithSalesRecordedSinceTheFlushStarted() {
+        deltas.add(order("2017-03-01T14:05:00Z", 10, item("sock", 2)));
+        List<RollupDeltas.Delta> failed = deltas.drain();
+        deltas.add(order("2017-03-01T14:30:00Z", 4, item("sock", 1), item("shoe", 1)));
+
+        failed.forEach(deltas::keep);
+        List<RollupDeltas.Delta> retry = deltas.drain();
+        assertEquals(2, retry.size());
+        RollupDeltas.Delta hour = find(retry, "HOUR:2017-03-01T14");
+        assertInc(hour, 2, 14, "sock", 3);
+        assertEquals(1L, inc(hour).get("units.shoe"));
+    }
+
+    @Test
+    public void keepsAFailedDeltaForAnIdleBucket() {
+        deltas.add(order("2017-03-01T14:05:00Z", 10, item("sock", 2)));
+        List<RollupDeltas.Delta> failed = deltas.drain();
+        deltas.keep(find(failed, "HOUR:2017-03-01T14"));
+
+        List<RollupDeltas.Delta> retry = deltas.drain();
+        assertEquals(1, retry.size());
+        assertInc(retry.get(0), 1, 10, "sock", 2);
+    }
+
+    @Test
+    public void escapesItemIdsThatAreNotValidFieldNames() {
+        deltas.add(order("2017-03-01T14:05:00Z", 1, item("$a.b", 1)));
+        assertEquals(1L, inc(deltas.drain().get(0)).get("units._a_b"));
+    }
+
+    private static CustomerOrder order(String date, float total, Item... items) {
+        CustomerOrder order = new CustomerOrder();
+        order.setDate(Date.from(Instant.parse(date)));
+        order.setTotal(total);
+        order.setItems(Arrays.asList(items));
+        return order;
+    }
+
+    private static Item item(String itemId, int quantity) {
+        return new Item(null, itemId, quantity, 1F);
+    }
+
+    private static RollupDeltas.Delta find(List<RollupDeltas.Delta> batch, String id) {
+        return batch.stream().filter(delta -> delta.id.equals(id)).findFirst()
+                .orElseThrow(() -> new AssertionError("no delta for " + id));
+    }
+
+    private static DBObject inc(RollupDeltas.Delta delta) {
+        return (DBObject) delta.toUpdate().getUpdateObject().get("$inc");
+    }
+
+    private static void assertInc(RollupDeltas.Delta delta, long orders, double revenue, String item, long units) {
+        DBObject inc = inc(delta);
+        assertEquals(orders, inc.get("orderCount"));
+        assertEquals(revenue, (Double) inc.get("revenue"), 0.001);
+        assertEquals(units, inc.get("units." + item));
+    }
+}
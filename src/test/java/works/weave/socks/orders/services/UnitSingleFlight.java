@@ -0,0 +1,111 @@
+package works.weave.socks.orders.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UnitSingleFlight {
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CompletableFuture<String> response = new CompletableFuture<>();
+
+    @Test
+    public void coalescesConcurrentCallsForTheSameKey() {
+        CompletableFuture<String> first = call("GET http://user/customers/1");
+        CompletableFuture<String> second = call("GET http://user/customers/1");
+        assertEquals(1, calls.get());
+
+        response.complete("customer");
+        assertEquals("customer", first.join());
+        assertEquals("customer", second.join());
+    }
+
+    @Test
+    public void issuesDifferentKeysSeparately() {
+        call("GET http://user/customers/1");
+        call("GET http://user/customers/2");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void issuesAgainOnceTheCallCompleted() {
+        call("GET http://user/customers/1");
+        response.complete("customer");
+        call("GET http://user/customers/1");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void failsEveryWaiterAndForgetsTheKey() {
+        CompletableFuture<String> first = call("GET http://user/customers/1");
+        CompletableFuture<String> second = call("GET http://user/customers/1");
+        response.completeExceptionally(new IllegalStateException("down"));
+        assertFailed(first);
+        assertFailed(second);
+
+        call("GET http://user/customers/1");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void cancellingOneCallerDoesNotCancelTheOthers() {
+        CompletableFuture<String> first = call("GET http://user/customers/1");
+        CompletableFuture<String> second = call("GET http://user/customers/1");
+        first.cancel(true);
+        response.complete("customer");
+        assertTrue(first.isCancelled());
+        assertEquals("customer", second.join());
+    }
+
+    @Test
+    public void failsTheRequestOnceEveryCallerGaveUp() {
+        CompletableFuture<String> first = call("GET http://user/customers/1");
+        CompletableFuture<String> second = call("GET http://user/customers/1");
+        first.completeExceptionally(new TimeoutException("first"));
+        assertFalse(response.isDone());
+        second.completeExceptionally(new TimeoutException("second"));
+        assertTrue(response.isCompletedExceptionally());
+    }
+
+    @Test
+    public void issuesAgainOnceEveryCallerGaveUp() {
+        CompletableFuture<String> first = call("GET http://user/customers/1");
+        first.cancel(true);
+        call("GET http://user/customers/1");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void forgetsTheKeyWhenTheCallThrows() {
+        CompletableFuture<String> failed = singleFlight.execute("GET http://user/customers/1", "user", () -> {
+            throw new IllegalStateException("saturated");
+        });
+        assertFailed(failed);
+        call("GET http://user/customers/1");
+        assertEquals(1, calls.get());
+    }
+
+    private CompletableFuture<String> call(String key) {
+        return singleFlight.execute(key, "user", () -> {
+            calls.incrementAndGet();
+            return response;
+        });
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) {
+        try {
+            future.join();
+            fail("expected a failure");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}